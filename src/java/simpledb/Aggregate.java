@@ -1,20 +1,47 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
  * min). Note that we only support aggregates over a single column, grouped by a
  * single column.
+ * <p>
+ * The groups are aggregated in memory up to a memory budget, counting every
+ * group as the size of one result tuple. Once the budget is used up, the
+ * child tuples of groups that are not in memory yet are partitioned on
+ * their group value into FANOUT spill files, and every partition is then
+ * aggregated by an Aggregate of its own, with a different partitioning.
+ * Partitions more than MAX_DEPTH levels down are aggregated in memory
+ * whatever their size.
  */
 public class Aggregate extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** Number of pages of groups kept in memory by default. */
+    public static final int DEFAULT_MEMORY_PAGES = 64;
+    /** Number of partitions the child tuples are split into when spilling. */
+    public static final int FANOUT = 8;
+    /** Number of times a partition may be split again. */
+    public static final int MAX_DEPTH = 3;
+
     private DbIterator child;
     private int afield, gfield;
     private Aggregator.Op aggreOp;
     private Aggregator aggregator;
     private DbIterator iterator;
+
+    private final int memoryBudget;
+    // the number of times the child tuples have been partitioned already
+    private final int depth;
+    // the partitions of the spilled child tuples; null if nothing was spilled
+    private SpillFile[] spills;
+    // the aggregate of the spilled partition being read, and the next one
+    private Aggregate partitionAggregate;
+    private int nextPartition;
+
     /**
      * Constructor.
      * 
@@ -34,17 +61,53 @@ public class Aggregate extends Operator {
      *            The aggregation operator to use
      */
     public Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop) {
+        this(child, afield, gfield, aop, DEFAULT_MEMORY_PAGES * BufferPool.getPageSize());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param child
+     *            The DbIterator that is feeding us tuples.
+     * @param afield
+     *            The column over which we are computing an aggregate.
+     * @param gfield
+     *            The column over which we are grouping the result, or -1 if
+     *            there is no grouping
+     * @param aop
+     *            The aggregation operator to use
+     * @param memoryBudget
+     *            The number of bytes of groups to keep in memory
+     */
+    public Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop,
+            int memoryBudget) {
+        this(child, afield, gfield, aop, memoryBudget, 0);
+    }
+
+    private Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop,
+            int memoryBudget, int depth) {
 	// some code goes here
     this.child = child;
     this.afield = afield;
     this.gfield = gfield;
     this.aggreOp = aop;
+    this.memoryBudget = memoryBudget;
+    this.depth = depth;
+    // fails now if the operator can't be computed
+    this.aggregator = newAggregator();
+    }
 
+    private Aggregator newAggregator() {
     Type gbFieldType = gfield == Aggregator.NO_GROUPING ? null : child.getTupleDesc().getFieldType(gfield);
     if (child.getTupleDesc().getFieldType(afield).equals(Type.INT_TYPE))
-        aggregator = new IntegerAggregator(gfield, gbFieldType, afield, aop);
+        return new IntegerAggregator(gfield, gbFieldType, afield, aggreOp);
     else
-        aggregator = new StringAggregator(gfield, gbFieldType, afield, aop);
+        return new StringAggregator(gfield, gbFieldType, afield, aggreOp);
+    }
+
+    /** @return the number of bytes of groups kept in memory */
+    public int getMemoryBudget() {
+        return memoryBudget;
     }
 
     /**
@@ -101,11 +164,80 @@ public class Aggregate extends Operator {
 	// some code goes here
     child.open();
         super.open();
-        while(child.hasNext()){
-            aggregator.mergeTupleIntoGroup(child.next());
+        aggregator = newAggregator();
+        closeSpills();
+        int maxGroups = depth >= MAX_DEPTH ? Integer.MAX_VALUE
+                : Math.max(1, memoryBudget / getTupleDesc().getSize());
+        try {
+            while(child.hasNext()){
+                Tuple t = child.next();
+                if (!aggregator.hasGroup(t)) {
+                    if (spills == null && aggregator.numGroups() >= maxGroups)
+                        spills = newSpills();
+                    if (spills != null) {
+                        spills[partition(t.getField(gfield))].add(t);
+                        continue;
+                    }
+                }
+                aggregator.mergeTupleIntoGroup(t);
+            }
+        } catch (IOException e) {
+            closeSpills();
+            throw new DbException("unable to spill aggregate partitions: " + e);
+        }
+        iterator = results(aggregator);
+    }
+
+    private SpillFile[] newSpills() throws IOException {
+        SpillFile[] files = new SpillFile[FANOUT];
+        for (int i = 0; i < FANOUT; i++)
+            files[i] = new SpillFile(child.getTupleDesc());
+        return files;
+    }
+
+    /** @return the partition of the specified group value */
+    private int partition(Field key) {
+        // a different hash function at every depth, or a partition that is
+        // split again would end up in a single partition
+        int h = key.hashCode() ^ (depth * 0x9E3779B9);
+        h *= 0x85EBCA6B;
+        h ^= h >>> 16;
+        return Math.floorMod(h, FANOUT);
+    }
+
+    /**
+     * Starts the aggregate of the next spilled partition that holds tuples.
+     *
+     * @return false if there are no more such partitions
+     */
+    private boolean nextPartitionAggregate() throws DbException, TransactionAbortedException {
+        while (spills != null && nextPartition < FANOUT) {
+            int p = nextPartition++;
+            if (spills[p].numTuples() == 0)
+                continue;
+            partitionAggregate = new Aggregate(spills[p].iterator(), afield,
+                    gfield, aggreOp, memoryBudget, depth + 1);
+            partitionAggregate.open();
+            return true;
+        }
+        return false;
+    }
+
+    private void closePartitionAggregate() {
+        if (partitionAggregate != null) {
+            partitionAggregate.close();
+            partitionAggregate = null;
+        }
+    }
+
+    private void closeSpills() {
+        closePartitionAggregate();
+        nextPartition = 0;
+        if (spills != null) {
+            for (SpillFile f : spills)
+                f.close();
+            spills = null;
         }
-        iterator = aggregator.iterator();
-        iterator.open();
     }
 
     /**
@@ -121,12 +253,22 @@ public class Aggregate extends Operator {
     {
         return  iterator.next();
     }
+    // the groups in memory are done: aggregate the spilled partitions
+    do {
+        if (partitionAggregate != null) {
+            if (partitionAggregate.hasNext())
+                return partitionAggregate.next();
+            closePartitionAggregate();
+        }
+    } while (nextPartitionAggregate());
     return null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
 	// some code goes here
     iterator.rewind();
+    closePartitionAggregate();
+    nextPartition = 0;
     }
 
     /**
@@ -142,7 +284,32 @@ public class Aggregate extends Operator {
      */
     public TupleDesc getTupleDesc() {
 	// some code goes here
-    TupleDesc child_td = child.getTupleDesc();
+    return resultTupleDesc(child.getTupleDesc(), afield, gfield, aggreOp);
+    }
+
+    /**
+     * @return the open iterator over the results of aggregator
+     * @throws DbException if a result doesn't fit in an int, such as a SUM
+     *         that overflows; the message names the aggregate and the group
+     */
+    static DbIterator results(Aggregator aggregator)
+            throws DbException, TransactionAbortedException {
+        DbIterator it;
+        try {
+            it = aggregator.iterator();
+        } catch (ArithmeticException e) {
+            throw new DbException(e.getMessage());
+        }
+        it.open();
+        return it;
+    }
+
+    /**
+     * @return the TupleDesc of the result of aggregating tuples of child_td
+     *         as specified, as returned by {@link #getTupleDesc}
+     */
+    static TupleDesc resultTupleDesc(TupleDesc child_td, int afield, int gfield,
+            Aggregator.Op aggreOp) {
     Type[] types;
     String[] names;
     String aggName = child_td.getFieldName(afield);
@@ -160,8 +327,10 @@ public class Aggregate extends Operator {
     public void close() {
 	// some code goes here\
          super.close();
-        iterator.close();
+        if (iterator != null)
+            iterator.close();
         child.close();
+        closeSpills();
     }
 
     @Override
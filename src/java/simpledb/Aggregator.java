@@ -76,6 +76,18 @@ public interface Aggregator extends Serializable {
      */
     public void mergeTupleIntoGroup(Tuple tup);
 
+    /**
+     * @return true if a tuple of the same group as tup has been merged
+     *
+     * @param tup the Tuple containing a group-by field
+     */
+    public boolean hasGroup(Tuple tup);
+
+    /**
+     * @return the number of distinct group values merged so far
+     */
+    public int numGroups();
+
     /**
      * Create a DbIterator over group aggregate results.
      * @see simpledb.TupleIterator for a possible helper
@@ -22,6 +22,7 @@ import simpledb.Predicate.Op;
 public class BTreeFile implements DbFile {
 
 	private final File f;
+	private final FileHandle handle;
 	private final TupleDesc td;
 	private final int tableid ;
 	private int keyField;
@@ -36,6 +37,7 @@ public class BTreeFile implements DbFile {
 	 */
 	public BTreeFile(File f, int key, TupleDesc td) {
 		this.f = f;
+		this.handle = new FileHandle(f);
 		this.tableid = f.getAbsoluteFile().hashCode();
 		this.keyField = key;
 		this.td = td;
@@ -79,14 +81,12 @@ public class BTreeFile implements DbFile {
 	 */
 	public Page readPage(PageId pid) {
 		BTreePageId id = (BTreePageId) pid;
-		BufferedInputStream bis = null;
 
 		try {
-			bis = new BufferedInputStream(new FileInputStream(f));
 			if(id.pgcateg() == BTreePageId.ROOT_PTR) {
 				byte pageBuf[] = new byte[BTreeRootPtrPage.getPageSize()];
-				int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
-				if (retval == -1) {
+				int retval = handle.read(0, pageBuf);
+				if (retval == 0) {
 					throw new IllegalArgumentException("Read past end of table");
 				}
 				if (retval < BTreeRootPtrPage.getPageSize()) {
@@ -99,13 +99,8 @@ public class BTreeFile implements DbFile {
 			}
 			else {
 				byte pageBuf[] = new byte[BufferPool.getPageSize()];
-				if (bis.skip(BTreeRootPtrPage.getPageSize() + (id.pageNumber()-1) * BufferPool.getPageSize()) != 
-						BTreeRootPtrPage.getPageSize() + (id.pageNumber()-1) * BufferPool.getPageSize()) {
-					throw new IllegalArgumentException(
-							"Unable to seek to correct place in BTreeFile");
-				}
-				int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
-				if (retval == -1) {
+				int retval = handle.read(pageOffset(id.pageNumber()), pageBuf);
+				if (retval == 0) {
 					throw new IllegalArgumentException("Read past end of table");
 				}
 				if (retval < BufferPool.getPageSize()) {
@@ -128,14 +123,6 @@ public class BTreeFile implements DbFile {
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
-		} finally {
-			// Close the file on success or error
-			try {
-				if (bis != null)
-					bis.close();
-			} catch (IOException ioe) {
-				// Ignore failures closing the file
-			}
 		}
 	}
 
@@ -149,24 +136,57 @@ public class BTreeFile implements DbFile {
 		BTreePageId id = (BTreePageId) page.getId();
 		
 		byte[] data = page.getPageData();
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
 		if(id.pgcateg() == BTreePageId.ROOT_PTR) {
-			rf.write(data);
-			rf.close();
+			handle.write(0, data);
 		}
 		else {
-			rf.seek(BTreeRootPtrPage.getPageSize() + (page.getId().pageNumber()-1) * BufferPool.getPageSize());
-			rf.write(data);
-			rf.close();
+			handle.write(pageOffset(page.getId().pageNumber()), data);
 		}
 	}
+
+	/**
+	 * Returns the offset in the file of the page with the specified number;
+	 * page 0 is the root pointer page, which is smaller than the others.
+	 */
+	private static long pageOffset(int pgNo) {
+		return BTreeRootPtrPage.getPageSize() + (long) (pgNo-1) * BufferPool.getPageSize();
+	}
+
+	/**
+	 * Serve page reads of this file from a memory mapping of it instead of 
+	 * a read system call per page; meant for indexes that are mostly read.
+	 * 
+	 * @see FileHandle#setMemoryMapped
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		handle.setMemoryMapped(memoryMapped);
+	}
+
+	/**
+	 * Returns true if page reads are served from a memory mapping
+	 */
+	public boolean isMemoryMapped() {
+		return handle.isMemoryMapped();
+	}
+
+	/**
+	 * Release the open file behind this BTreeFile; it is reopened on the
+	 * next read or write.
+	 */
+	public void close() throws IOException {
+		handle.close();
+	}
 	
 	/**
 	 * Returns the number of pages in this BTreeFile.
 	 */
 	public int numPages() {
 		// we only ever write full pages
-		return (int) ((f.length() - BTreeRootPtrPage.getPageSize())/ BufferPool.getPageSize());
+		try {
+			return (int) ((handle.size() - BTreeRootPtrPage.getPageSize())/ BufferPool.getPageSize());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	/**
@@ -546,6 +566,26 @@ public class BTreeFile implements DbFile {
 		return dirtyPagesArr;
 	}
 	
+	/**
+	 * Insert the tuples into the B+ tree one at a time.  A page that several
+	 * insertions modify is returned only once.  Modified pages are marked
+	 * dirty right away, so that the BufferPool flushes rather than drops
+	 * them if it evicts them before the whole batch is inserted.
+	 * 
+	 * @see #insertTuple(TransactionId, Tuple)
+	 */
+	public ArrayList<Page> insertTuples(TransactionId tid, List<Tuple> tuples)
+			throws DbException, IOException, TransactionAbortedException {
+		LinkedHashMap<PageId, Page> dirtypages = new LinkedHashMap<PageId, Page>();
+		for(Tuple t : tuples) {
+			for(Page p : insertTuple(tid, t)) {
+				p.markDirty(true, tid);
+				dirtypages.put(p.getId(), p);
+			}
+		}
+		return new ArrayList<Page>(dirtypages.values());
+	}
+	
 	/**
 	 * Handle the case when a B+ tree page becomes less than half full due to deletions.
 	 * If one of its siblings has extra tuples/entries, redistribute those tuples/entries.
@@ -1032,15 +1072,12 @@ public class BTreeFile implements DbFile {
 	 */
 	BTreeRootPtrPage getRootPtrPage(TransactionId tid, HashMap<PageId, Page> dirtypages) throws DbException, IOException, TransactionAbortedException {
 		synchronized(this) {
-			if(f.length() == 0) {
+			if(handle.size() == 0) {
 				// create the root pointer page and the root page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
 				byte[] emptyRootPtrData = BTreeRootPtrPage.createEmptyPageData();
 				byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData();
-				bw.write(emptyRootPtrData);
-				bw.write(emptyLeafData);
-				bw.close();
+				handle.append(emptyRootPtrData);
+				handle.append(emptyLeafData);
 			}
 		}
 
@@ -1096,11 +1133,8 @@ public class BTreeFile implements DbFile {
 		if(headerId == null) {		
 			synchronized(this) {
 				// create the new page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
 				byte[] emptyData = BTreeInternalPage.createEmptyPageData();
-				bw.write(emptyData);
-				bw.close();
+				handle.append(emptyData);
 				emptyPageNo = numPages();
 			}
 		}
@@ -1131,10 +1165,7 @@ public class BTreeFile implements DbFile {
 		BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 		
 		// write empty page to disk
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
-		rf.seek(BTreeRootPtrPage.getPageSize() + (emptyPageNo-1) * BufferPool.getPageSize());
-		rf.write(BTreePage.createEmptyPageData());
-		rf.close();
+		handle.write(pageOffset(emptyPageNo), BTreePage.createEmptyPageData());
 		
 		// make sure the page is not in the buffer pool	or in the local cache		
 		Database.getBufferPool().discardPage(newPageId);
@@ -1255,6 +1286,24 @@ public class BTreeFile implements DbFile {
 		return new BTreeFileIterator(this, tid);
 	}
 
+	/**
+	 * Get an iterator over the tuples of the leaf pages startPage up to but
+	 * excluding endPage of this file, in key order. The leaf pages are not
+	 * stored in key order, so every range still reads the whole chain of
+	 * leaves and only returns the tuples of its own pages: a range costs as
+	 * much as a full scan.
+	 * 
+	 * @param tid - the transaction id
+	 * @param startPage - the number of the first page to read
+	 * @param endPage - one more than the number of the last page to read
+	 * @return an iterator for the tuples of the leaf pages in the range
+	 */
+	public DbFileIterator iterator(TransactionId tid, int startPage, int endPage) {
+		if (startPage < 0 || endPage < startPage)
+			throw new IllegalArgumentException("invalid page range " + startPage + " to " + endPage);
+		return new BTreeFileIterator(this, tid, startPage, endPage);
+	}
+
 }
 
 /**
@@ -1267,6 +1316,10 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 
 	TransactionId tid;
 	BTreeFile f;
+	// the leaf pages whose tuples are read are startPage up to but excluding
+	// endPage, or all of them if endPage is negative
+	int startPage;
+	int endPage;
 
 	/**
 	 * Constructor for this iterator
@@ -1274,8 +1327,33 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 	 * @param tid - the transaction id
 	 */
 	public BTreeFileIterator(BTreeFile f, TransactionId tid) {
+		this(f, tid, 0, -1);
+	}
+
+	/**
+	 * Constructor for an iterator over the tuples of a range of pages
+	 * @param f - the BTreeFile containing the tuples
+	 * @param tid - the transaction id
+	 * @param startPage - the number of the first page to read
+	 * @param endPage - one more than the number of the last page to read
+	 */
+	public BTreeFileIterator(BTreeFile f, TransactionId tid, int startPage, int endPage) {
 		this.f = f;
 		this.tid = tid;
+		this.startPage = startPage;
+		this.endPage = endPage;
+	}
+
+	/**
+	 * @return an iterator over the tuples of the specified leaf page, or null
+	 * if it is empty or outside the range of pages read
+	 */
+	private Iterator<Tuple> leafIterator(BTreeLeafPage p) {
+		int pgNo = p.getId().pageNumber();
+		if (endPage >= 0 && (pgNo < startPage || pgNo >= endPage))
+			return null;
+		Iterator<Tuple> leaf = p.iterator();
+		return leaf.hasNext() ? leaf : null;
 	}
 
 	/**
@@ -1286,7 +1364,7 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
 		BTreePageId root = rootPtr.getRootId();
 		curp = f.findLeafPage(tid, root, Permissions.READ_ONLY, null);
-		it = curp.iterator();
+		it = leafIterator(curp);
 	}
 
 	/**
@@ -1308,9 +1386,7 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 			else {
 				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
 						nextp, Permissions.READ_ONLY);
-				it = curp.iterator();
-				if (!it.hasNext())
-					it = null;
+				it = leafIterator(curp);
 			}
 		}
 
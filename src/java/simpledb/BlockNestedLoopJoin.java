@@ -0,0 +1,197 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * BlockNestedLoopJoin is a nested loops join that reads the outer relation
+ * a block at a time: it buffers as many outer tuples as fit in its memory
+ * budget, then scans the inner relation once and joins every inner tuple
+ * with every tuple of the block. The inner relation is therefore scanned
+ * once per block instead of once per outer tuple.
+ * <p>
+ * Within a block the results come out in inner relation order.
+ */
+public class BlockNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of pages of outer tuples buffered by default. */
+    public static final int DEFAULT_BLOCK_PAGES = 8;
+
+    private JoinPredicate joinPredicate;
+    private DbIterator child1;
+    private DbIterator child2;
+    private TupleDesc mergedTupleDesc;
+    private final int memoryBudget;
+    private int blockTuples;
+
+    // the outer tuples of the current block
+    private ArrayList<Tuple> block = new ArrayList<Tuple>();
+    // the inner tuple being joined with the block, or null, and the next
+    // outer tuple of the block to compare it with
+    private Tuple inner;
+    private int blockPos;
+
+    /**
+     * Constructor. Buffers DEFAULT_BLOCK_PAGES pages worth of outer tuples
+     * at a time.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, DEFAULT_BLOCK_PAGES * BufferPool.getPageSize());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @param memoryBudget
+     *            The number of bytes of outer tuples to buffer at a time;
+     *            at least one tuple is buffered whatever the budget
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2,
+            int memoryBudget) {
+        this.joinPredicate = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.memoryBudget = memoryBudget;
+        this.mergedTupleDesc = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        this.blockTuples = blockTuples(memoryBudget, child1.getTupleDesc());
+    }
+
+    /**
+     * @return the number of tuples of the specified TupleDesc that fit in
+     *         memoryBudget bytes, and at least 1
+     */
+    public static int blockTuples(int memoryBudget, TupleDesc td) {
+        return Math.max(1, memoryBudget / td.getSize());
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return this.joinPredicate;
+    }
+
+    /** @return the number of bytes of outer tuples buffered at a time */
+    public int getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    /**
+     * @return
+     *       the field name of join field1. Should be quantified by
+     *       alias or table name.
+     * */
+    public String getJoinField1Name() {
+        return this.child1.getTupleDesc().getFieldName(joinPredicate.getField1());
+    }
+
+    /**
+     * @return
+     *       the field name of join field2. Should be quantified by
+     *       alias or table name.
+     * */
+    public String getJoinField2Name() {
+        return this.child2.getTupleDesc().getFieldName(joinPredicate.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.mergedTupleDesc;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        this.block.clear();
+        this.inner = null;
+        super.open();
+    }
+
+    public void close() {
+        this.block.clear();
+        this.inner = null;
+        this.child1.close();
+        this.child2.close();
+        super.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        this.child1.rewind();
+        this.block.clear();
+        this.inner = null;
+    }
+
+    /**
+     * Reads the next block of outer tuples and starts a new scan of the
+     * inner relation.
+     *
+     * @return false if the outer relation has been read to the end
+     */
+    private boolean nextBlock() throws DbException, TransactionAbortedException {
+        this.block.clear();
+        while (this.block.size() < this.blockTuples && child1.hasNext())
+            this.block.add(child1.next());
+        if (this.block.isEmpty())
+            return false;
+        child2.rewind();
+        return true;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples: the concatenation of the next outer and inner tuples
+     * that satisfy the join predicate.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true)
+        {
+            if (this.inner != null)
+            {
+                while (this.blockPos < this.block.size())
+                {
+                    Tuple outer = this.block.get(this.blockPos++);
+                    if (this.joinPredicate.filter(outer, this.inner))
+                        return Join.mergeTuples(this.mergedTupleDesc, outer, this.inner);
+                }
+                this.inner = null;
+            }
+            if (!this.block.isEmpty() && child2.hasNext())
+            {
+                this.inner = child2.next();
+                this.blockPos = 0;
+            }
+            else if (!nextBlock())
+            {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+        this.mergedTupleDesc = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        this.blockTuples = blockTuples(this.memoryBudget, child1.getTupleDesc());
+    }
+
+}
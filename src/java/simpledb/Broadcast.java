@@ -0,0 +1,54 @@
+package simpledb;
+
+/**
+ * Broadcast is an exchange that sends every tuple of its children to each
+ * of several consumers, for instance the small relation of a join to every
+ * copy of the join. Every consumer reads a Broadcast operator of its own,
+ * made by {@link #outputs}, and they must be read concurrently.
+ */
+public class Broadcast extends Exchange {
+
+    private static final long serialVersionUID = 1L;
+    private final int output;
+
+    private Broadcast(Producers producers, int output) {
+        super(producers, output);
+        this.output = output;
+    }
+
+    /**
+     * Creates the operators that each read all the tuples of the specified
+     * children.
+     *
+     * @param children
+     *            the iterators whose tuples are sent, all with the same
+     *            TupleDesc
+     * @param numOutputs
+     *            the number of consumers
+     * @return one operator for each consumer
+     */
+    public static Broadcast[] outputs(DbIterator[] children, int numOutputs) {
+        Producers producers = new Producers(children, -1, numOutputs);
+        Broadcast[] ops = new Broadcast[numOutputs];
+        for (int i = 0; i < numOutputs; i++)
+            ops[i] = new Broadcast(producers, i);
+        return ops;
+    }
+
+    /** @return the consumer this operator is read by */
+    public int getOutput() {
+        return output;
+    }
+
+    public String getName() {
+        return "broadcast#" + output;
+    }
+
+    /**
+     * @throws DbException always, since the outputs are read together
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        throw new DbException("an output of a broadcast can't be rewound");
+    }
+
+}
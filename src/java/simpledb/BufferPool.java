@@ -2,8 +2,15 @@ package simpledb;
 
 import java.io.*;
 
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 /**
  * BufferPool manages the reading and writing of pages into memory from
  * disk. Access methods call into it to retrieve pages, and it fetches
@@ -27,24 +34,217 @@ public class BufferPool {
     public static final int DEFAULT_PAGES = 50;
     
 
+    /** Pools are only split into shards of at least this many pages. */
+    private static final int MIN_PAGES_PER_SHARD = 128;
+
+    /** Upper bound on the number of shards a pool is split into. */
+    private static final int MAX_SHARDS = 64;
+
+    /** Upper bound on the number of pages read ahead of a sequential scan. */
+    private static final int MAX_READ_AHEAD_PAGES = 8;
+
     /**
-     * Creates a BufferPool that caches up to numPages pages.
-     *
-     * @param numPages maximum number of pages in this buffer pool.
+     * Background threads that read pages ahead of sequential scans. Shared
+     * by all pools; the threads are daemons so they never keep the JVM up.
      */
+    private static final ExecutorService readAheadExecutor =
+            Executors.newFixedThreadPool(2, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "BufferPool read-ahead");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * Number of sequential scans of one table whose read-ahead is tracked at
+     * once, such as the page range workers of a {@link ParallelSeqScan} or
+     * a {@link ParallelAggregate}.
+     */
+    static final int MAX_SCAN_STREAMS = 16;
+
+    /**
+     * Per-table record of the sequential streams of heap page requests seen
+     * last: for each stream, the last page requested and the highest page
+     * already handed to the read-ahead executor. Scans of different page
+     * ranges of a table interleave their requests, so each of them continues
+     * a stream of its own; the least recently used stream is replaced by a
+     * request that continues none of them.
+     */
+    static final class ScanState {
+        private final int[] lastPage = new int[MAX_SCAN_STREAMS];
+        private final int[] readAheadTo = new int[MAX_SCAN_STREAMS];
+        private final long[] lastUsed = new long[MAX_SCAN_STREAMS];
+        private long clock;
+
+        ScanState() {
+            // no stream continues before its second request, not even one
+            // that starts at page 0
+            Arrays.fill(lastPage, Integer.MIN_VALUE);
+            Arrays.fill(readAheadTo, -1);
+        }
+
+        /**
+         * Records a request for page pgNo.
+         *
+         * @param window the number of pages to read ahead of a sequential
+         *               stream
+         * @return the first and last page to read ahead, or null if pgNo
+         *         doesn't continue a stream or its window was read already
+         */
+        synchronized int[] request(int pgNo, int window) {
+            int s = -1;
+            for (int i = 0; i < MAX_SCAN_STREAMS && s < 0; i++)
+                if (lastPage[i] == pgNo - 1)
+                    s = i;
+            if (s < 0) {
+                for (int i = 0; i < MAX_SCAN_STREAMS; i++) {
+                    if (lastPage[i] == pgNo) {
+                        // the same page again
+                        lastUsed[i] = ++clock;
+                        return null;
+                    }
+                }
+                // a new stream, or a random request
+                s = 0;
+                for (int i = 1; i < MAX_SCAN_STREAMS; i++)
+                    if (lastUsed[i] < lastUsed[s])
+                        s = i;
+                lastPage[s] = pgNo;
+                readAheadTo[s] = pgNo;
+                lastUsed[s] = ++clock;
+                return null;
+            }
+            lastPage[s] = pgNo;
+            lastUsed[s] = ++clock;
+            int from = Math.max(readAheadTo[s], pgNo) + 1;
+            int to = pgNo + window;
+            if (from > to)
+                return null;
+            readAheadTo[s] = to;
+            return new int[] { from, to };
+        }
+    }
+
+    /**
+     * One partition of the pool. Every page whose id hashes to a shard is
+     * cached, replaced and flushed under that shard's monitor only, so misses
+     * and evictions on different shards proceed in parallel.
+     */
+    private static final class Shard {
+        final int capacity;
+        final HashMap<PageId, Page> pages;
+        final ReplacementPolicy replacementPolicy;
+
+        Shard(int capacity, ReplacementPolicy replacementPolicy) {
+            this.capacity = capacity;
+            this.pages = new HashMap<PageId, Page>();
+            this.replacementPolicy = replacementPolicy;
+        }
+    }
+
     /*
-        map pageid ==>page;
+        map pageid ==>page, split by PageId hash into shards;
         record the num_pages which can't be changed!
      */
      private final int numPages;
-     private  ConcurrentHashMap<PageId,Page>  Map_ID_page;   //lab 1 finished
-     private ConcurrentHashMap<PageId,Integer> LRUmap;//lab2 use LRU
+     private final Shard[] shards;
 
+    /*
+        read-ahead: window size (0 disables it), scan state by table id
+        and the pages whose read is queued or running
+     */
+    private final int readAheadPages;
+    private final ConcurrentHashMap<Integer, ScanState> scans =
+            new ConcurrentHashMap<Integer, ScanState>();
+    private final Set<PageId> readAheadPending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     */
     public BufferPool(int numPages) {
+        this(numPages, ReplacementPolicy.Kind.LRU);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts
+     * pages according to the specified kind of replacement policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param kind the replacement policy to use
+     */
+    public BufferPool(int numPages, ReplacementPolicy.Kind kind) {
+        this(numPages, kind, defaultNumShards(numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages split over
+     * numShards independently locked shards, each of which runs its own
+     * replacement policy of the specified kind.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param kind the replacement policy to use
+     * @param numShards the number of shards; at least 1 and at most numPages
+     */
+    public BufferPool(int numPages, ReplacementPolicy.Kind kind, int numShards) {
+        if (numShards < 1 || numShards > Math.max(1, numPages))
+            throw new IllegalArgumentException("invalid number of shards " + numShards);
+        this.numPages = numPages;
+        this.shards = new Shard[numShards];
+        for (int i = 0; i < numShards; i++) {
+            int capacity = numPages / numShards + (i < numPages % numShards ? 1 : 0);
+            shards[i] = new Shard(capacity, kind.create(capacity));
+        }
+        // the last shard is never larger than the others
+        this.readAheadPages = defaultReadAheadPages(shards[numShards - 1].capacity);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and picks pages
+     * to evict with the specified replacement policy. The pool is not
+     * sharded, since a single policy instance tracks every page.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param replacementPolicy the policy used to choose eviction victims
+     */
+    public BufferPool(int numPages, ReplacementPolicy replacementPolicy) {
         // some code goes here
         this.numPages = numPages;
-        this.Map_ID_page = new ConcurrentHashMap<>();
-        this.LRUmap = new ConcurrentHashMap<>();
+        this.shards = new Shard[] { new Shard(numPages, replacementPolicy) };
+        this.readAheadPages = defaultReadAheadPages(numPages);
+    }
+
+    /**
+     * Never read ahead more than a quarter of the smallest shard, so that
+     * prefetched pages cannot push the pages being scanned out of a small
+     * pool.
+     */
+    private static int defaultReadAheadPages(int shardCapacity) {
+        return Math.min(MAX_READ_AHEAD_PAGES, shardCapacity / 4);
+    }
+
+    /**
+     * One shard per available processor (rounded up to a power of two),
+     * as long as every shard still gets MIN_PAGES_PER_SHARD pages.
+     */
+    private static int defaultNumShards(int numPages) {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int n = Integer.highestOneBit(Math.max(1, cpus - 1)) << 1;
+        n = Math.min(n, MAX_SHARDS);
+        return Math.max(1, Math.min(n, numPages / MIN_PAGES_PER_SHARD));
+    }
+
+    private Shard shardFor(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return shards[(h & 0x7fffffff) % shards.length];
+    }
+
+    /** @return the number of shards this pool is split into */
+    public int getNumShards() {
+        return shards.length;
     }
     
     public static int getPageSize() {
@@ -60,19 +260,6 @@ public class BufferPool {
     public static void resetPageSize() {
     	BufferPool.pageSize = PAGE_SIZE;
     }
-    private void LRUupdate(PageId pid)
-    { 
-        for (PageId key:LRUmap.keySet())
-        {
-            int tmp = LRUmap.get(key);
-            if(tmp>0)
-            {
-                LRUmap.put(key, tmp-1);
-            }
-        }
-        //update the accessed
-        LRUmap.put(pid, this.numPages);
-    }
     /**
      * Retrieve the specified page with the associated permissions.
      * Will acquire a lock and may block if that lock is held by another
@@ -92,19 +279,101 @@ public class BufferPool {
         throws TransactionAbortedException, DbException {
         // some code goes here
         //need to modify  compared with lab1
-    
-        if(! Map_ID_page.containsKey(pid))
-        {   
-            //need to evict
-            if (Map_ID_page.size() >= this.numPages) 
-                evictPage();
-            // add it to buffer pool
-            DbFile dbfile  = Database.getCatalog().getDatabaseFile(pid.getTableId());
-            Page page = dbfile.readPage(pid);
-            Map_ID_page.put(pid,page);
+        Shard shard = shardFor(pid);
+        Page page;
+        synchronized (shard) {
+            page = shard.pages.get(pid);
+            if (page == null)
+            {
+                //need to evict
+                if (shard.pages.size() >= shard.capacity)
+                    evictPage(shard);
+                // add it to buffer pool
+                DbFile dbfile  = Database.getCatalog().getDatabaseFile(pid.getTableId());
+                page = dbfile.readPage(pid);
+                shard.pages.put(pid, page);
+            }
+            shard.replacementPolicy.pageAccessed(pid);
+        }
+        if (pid instanceof HeapPageId)
+            readAhead((HeapPageId) pid);
+        return page;
+    }
+
+    /**
+     * Detects sequential scans of heap files: once page n of a table is
+     * requested right after page n-1, pages n+1..n+readAheadPages are read
+     * on the read-ahead executor, so that the caller's work on page n
+     * overlaps the reads of the pages it will ask for next. Up to
+     * {@link #MAX_SCAN_STREAMS} scans of a table are detected even when
+     * their requests interleave.
+     */
+    private void readAhead(HeapPageId pid) {
+        if (readAheadPages == 0)
+            return;
+        int tableId = pid.getTableId();
+        int pgNo = pid.pageNumber();
+        ScanState scan = scans.get(tableId);
+        if (scan == null) {
+            scans.putIfAbsent(tableId, new ScanState());
+            scan = scans.get(tableId);
+        }
+        int[] range = scan.request(pgNo, readAheadPages);
+        if (range == null)
+            return;
+        int from = range[0];
+        int to = range[1];
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        to = Math.min(to, file.numPages() - 1);
+        for (int i = from; i <= to; i++) {
+            final HeapPageId next = new HeapPageId(tableId, i);
+            if (!readAheadPending.add(next))
+                continue;
+            readAheadExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        prefetchPage(next);
+                    } finally {
+                        readAheadPending.remove(next);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the specified page into the pool unless it is already cached.
+     * Read-ahead is only a hint, so any failure is ignored; the page will
+     * simply be read again when it is requested.
+     */
+    private void prefetchPage(PageId pid) {
+        Shard shard = shardFor(pid);
+        synchronized (shard) {
+            if (shard.pages.containsKey(pid))
+                return;
+            try {
+                DbFile dbfile = Database.getCatalog().getDatabaseFile(pid.getTableId());
+                // the table may have been truncated or dropped meanwhile
+                if (pid.pageNumber() >= dbfile.numPages())
+                    return;
+                if (shard.pages.size() >= shard.capacity)
+                    evictPage(shard);
+                shard.pages.put(pid, dbfile.readPage(pid));
+                shard.replacementPolicy.pageAccessed(pid);
+            } catch (DbException e) {
+                // nothing to evict; skip this page
+            } catch (RuntimeException e) {
+                // page could not be read; skip it
+            }
+        }
+    }
+
+    /** @return true if the specified page is currently in the pool */
+    boolean isCached(PageId pid) {
+        Shard shard = shardFor(pid);
+        synchronized (shard) {
+            return shard.pages.containsKey(pid);
         }
-        this.LRUupdate(pid);
-        return Map_ID_page.get(pid);
     }
 
     /**
@@ -172,16 +441,24 @@ public class BufferPool {
         // not necessary for lab1
         DbFile tableFile = Database.getCatalog().getDatabaseFile(tableId);
         ArrayList<Page> affected_page = tableFile.insertTuple(tid, t);
-        for (Page page: affected_page)
-        {
-            PageId pid = page.getId();
-            if (!Map_ID_page.containsKey(pid) && Map_ID_page.size() >= this.numPages)
-                evictPage();
-            page.markDirty(true, tid);
-            this.Map_ID_page.put(pid, page);
-            LRUupdate(pid);
-        }
+        cacheDirtyPages(tid, affected_page);
+    }
 
+    /**
+     * Add the specified tuples to the specified table on behalf of
+     * transaction tid. Same as calling {@link #insertTuple} for each tuple,
+     * but the table file can fill pages with many tuples at once and every
+     * page that was dirtied is added to the cache only once.
+     *
+     * @param tid the transaction adding the tuples
+     * @param tableId the table to add the tuples to
+     * @param tuples the tuples to add
+     */
+    public void insertTuples(TransactionId tid, int tableId, List<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        DbFile tableFile = Database.getCatalog().getDatabaseFile(tableId);
+        ArrayList<Page> affected_page = tableFile.insertTuples(tid, tuples);
+        cacheDirtyPages(tid, affected_page);
     }
 
     /**
@@ -204,13 +481,26 @@ public class BufferPool {
         int tableId = t.getRecordId().getPageId().getTableId();
         DbFile tableFile = Database.getCatalog().getDatabaseFile(tableId);
         ArrayList<Page> affected_page = tableFile.deleteTuple(tid, t);
-        for (Page page: affected_page){
+        cacheDirtyPages(tid, affected_page);
+    }
+
+    /**
+     * Marks the specified pages dirty on behalf of tid and puts them in the
+     * pool, replacing any cached versions of those pages.
+     */
+    private void cacheDirtyPages(TransactionId tid, ArrayList<Page> pages)
+        throws DbException {
+        for (Page page: pages)
+        {
             PageId pid = page.getId();
-            if (!this.Map_ID_page.containsKey(pid) &&this.Map_ID_page.size() >= this.numPages)
-                evictPage();
-            page.markDirty(true, tid);
-           this.Map_ID_page.put(pid, page);
-            LRUupdate(pid);
+            Shard shard = shardFor(pid);
+            synchronized (shard) {
+                if (!shard.pages.containsKey(pid) && shard.pages.size() >= shard.capacity)
+                    evictPage(shard);
+                page.markDirty(true, tid);
+                shard.pages.put(pid, page);
+                shard.replacementPolicy.pageAccessed(pid);
+            }
         }
     }
 
@@ -219,12 +509,14 @@ public class BufferPool {
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      *     break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages() throws IOException {
+    public void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-        for (PageId pageId: this.Map_ID_page.keySet()
-        ){
-            flushPage(pageId);
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (PageId pageId : shard.pages.keySet())
+                    flushPage(shard, pageId);
+            }
         }
     }
 
@@ -236,28 +528,31 @@ public class BufferPool {
         Also used by B+ tree files to ensure that deleted pages
         are removed from the cache so they can be reused safely
     */
-    public synchronized void discardPage(PageId pid) {
+    public void discardPage(PageId pid) {
         // some code goes here
         // not necessary for lab1
-        if (!this.Map_ID_page.containsKey(pid))
-             return;
-        try {
-            flushPage(pid);
-        } catch (IOException e){
-            e.printStackTrace();
+        Shard shard = shardFor(pid);
+        synchronized (shard) {
+            if (!shard.pages.containsKey(pid))
+                 return;
+            try {
+                flushPage(shard, pid);
+            } catch (IOException e){
+                e.printStackTrace();
+            }
+            shard.pages.remove(pid);
+            shard.replacementPolicy.pageRemoved(pid);
         }
-        this.Map_ID_page.remove(pid);
-        LRUmap.remove(pid);
     }
 
     /**
-     * Flushes a certain page to disk
-     * @param pid an ID indicating the page to flush
+     * Flushes a page of the specified shard to disk; the caller must hold
+     * the shard's monitor.
      */
-    private synchronized  void flushPage(PageId pid) throws IOException {
+    private void flushPage(Shard shard, PageId pid) throws IOException {
         // some code goes here
         // not necessary for lab1
-        Page page = this.Map_ID_page.get(pid);
+        Page page = shard.pages.get(pid);
         if (page == null) 
             throw new IOException();
         if (page.isDirty() == null) 
@@ -268,40 +563,31 @@ public class BufferPool {
 
     /** Write all pages of the specified transaction to disk.
      */
-    public synchronized  void flushPages(TransactionId tid) throws IOException {
+    public void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
     }
 
     /**
-     * Discards a page from the buffer pool.
+     * Discards a page from the specified shard, which must be locked by the
+     * caller.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
      */
-    private synchronized  void evictPage() throws DbException {
+    private void evictPage(Shard shard) throws DbException {
         // some code goes here
         // not necessary for lab1
-        int LRused = this.numPages;
-        PageId evict_pageId = null;
-        for (PageId pageId : LRUmap.keySet())
-        {
-            if (LRUmap.get(pageId) <= LRused)
-            {
-                LRused = LRUmap.get(pageId);
-                evict_pageId = pageId;
-            }
-        }
+        PageId evict_pageId = shard.replacementPolicy.evictionVictim();
         if (evict_pageId == null) 
             throw new DbException(" evict noting");
         try
          {
-            flushPage(evict_pageId);
+            flushPage(shard, evict_pageId);
         } 
         catch (IOException e) 
         {
             e.printStackTrace();
         }
-        this.Map_ID_page.remove(evict_pageId);
-        LRUmap.remove(evict_pageId);
+        shard.pages.remove(evict_pageId);
     }
 
 }
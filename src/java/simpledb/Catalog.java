@@ -7,8 +7,6 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
-import javafx.scene.control.Tab;
-
 /**
  * The Catalog keeps track of all available tables in the database and their
  * associated schemas.
@@ -58,8 +56,20 @@ public class Catalog {
      */
     public void addTable(DbFile file, String name, String pkeyField) {
         // some code goes here
-        this.Map_id_table.put(file.getId(),new Table(file,name,pkeyField));
+        Table old = this.Map_id_table.put(file.getId(),new Table(file,name,pkeyField));
         this.Map_name_id.put(name,file.getId());
+        // the replaced file is no longer reachable through the catalog
+        if (old != null && old.getFile() != file)
+            closeFile(old.getFile());
+    }
+
+    /** Close the specified file, ignoring (but reporting) failures. */
+    private static void closeFile(DbFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     public void addTable(DbFile file, String name) {
@@ -150,6 +160,8 @@ public class Catalog {
     /** Delete all tables from the catalog */
     public void clear() {
         // some code goes here
+        for (Table table : this.Map_id_table.values())
+            closeFile(table.getFile());
         this.Map_id_table.clear();
         this.Map_name_id.clear();
     }
@@ -165,7 +177,7 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
             
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                //assume line is of the format name (field type, field type, ...) [mmap]
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
@@ -197,6 +209,14 @@ public class Catalog {
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
                 HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                //an optional trailing "mmap" serves reads of the table from a memory mapping
+                String mode = line.substring(line.indexOf(")") + 1).trim();
+                if (mode.toLowerCase().equals("mmap"))
+                    tabHf.setMemoryMapped(true);
+                else if (!mode.isEmpty()) {
+                    System.out.println("Unknown table mode " + mode);
+                    System.exit(0);
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
@@ -43,6 +43,21 @@ public interface DbFile {
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException;
 
+    /**
+     * Inserts the specified tuples to the file on behalf of transaction.
+     * Equivalent to calling {@link #insertTuple} for each tuple, except that
+     * every modified page appears only once in the result.
+     *
+     * @param tid The transaction performing the update
+     * @param tuples The tuples to add.  These tuples should be updated to
+     *          reflect that they are now stored in this file.
+     * @return An ArrayList contain the pages that were modified
+     * @throws DbException if the tuples cannot be added
+     * @throws IOException if the needed file can't be read/written
+     */
+    public ArrayList<Page> insertTuples(TransactionId tid, List<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException;
+
     /**
      * Removes the specified tuple from the file on behalf of the specified
      * transaction.
@@ -68,6 +83,25 @@ public interface DbFile {
      */
     public DbFileIterator iterator(TransactionId tid);
 
+    /**
+     * Returns an iterator over the tuples stored in the pages startPage up to
+     * but excluding endPage of this DbFile, so that a scan can be split
+     * between threads: the iterators of disjoint ranges that cover all the
+     * pages return every tuple of the file exactly once. Pages past the end
+     * of the file are ignored.
+     * <p>
+     * Only a heap file reads just the pages of the range. A B+ tree file
+     * still walks its whole leaf chain, in key order, and drops the tuples
+     * of the leaves outside the range, so a range of it costs as much as a
+     * full scan and splitting a scan of it between threads doesn't help.
+     *
+     * @param startPage the number of the first page to read
+     * @param endPage one more than the number of the last page to read
+     * @return an iterator over the tuples stored in the range of pages.
+     * @throws IllegalArgumentException if the range is invalid
+     */
+    public DbFileIterator iterator(TransactionId tid, int startPage, int endPage);
+
     /**
      * Returns a unique ID used to identify this DbFile in the Catalog. This id
      * can be used to look up the table via {@link Catalog#getDatabaseFile} and
@@ -90,4 +124,13 @@ public interface DbFile {
     public TupleDesc getTupleDesc();
 
     public int numPages();
+
+    /**
+     * Releases the operating system resources (open files) held by this
+     * DbFile. The file stays usable; they are acquired again on the next
+     * read or write. Called by the Catalog when the table is removed.
+     *
+     * @throws IOException if the underlying file can't be closed
+     */
+    public void close() throws IOException;
 }
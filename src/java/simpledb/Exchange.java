@@ -0,0 +1,298 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exchange is the base class of the operators that move tuples between
+ * threads, so that the operators below and above an exchange run in
+ * parallel without knowing about it.
+ * <p>
+ * The children of an exchange, its producers, are each read to the end by a
+ * worker thread of their own. Every tuple they return is routed to one or
+ * all of the outputs of the exchange, each of which is a bounded queue read
+ * by an Exchange operator: {@link Gather} reads the only output of its
+ * producers, and {@link Repartition} and {@link Broadcast} each read one of
+ * several outputs that share producers.
+ * <p>
+ * Producers block while the queue of a tuple is full, so the outputs of
+ * shared producers must be read concurrently, each of them by a different
+ * thread, for instance under different children of a Gather. The producers
+ * are started when the first of their outputs is opened, and stopped once
+ * all of them are closed; an output that is closed early discards its
+ * tuples. Worker threads are never interrupted, since an interrupt closes
+ * the file channels of the tables they read; they check for cancellation
+ * instead whenever they wait.
+ */
+public abstract class Exchange extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of tuples each output of an exchange buffers at most. */
+    public static final int QUEUE_CAPACITY = 1024;
+
+    // how long blocked threads wait before checking for cancellation
+    private static final long POLL_MILLIS = 10;
+
+    private static final ExecutorService workerPool =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Exchange worker");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private final Producers producers;
+    private final int output;
+
+    /**
+     * Constructor.
+     *
+     * @param producers
+     *            the producers whose tuples this operator reads
+     * @param output
+     *            the output of the producers that this operator reads
+     */
+    Exchange(Producers producers, int output) {
+        this.producers = producers;
+        this.output = output;
+    }
+
+    /** @return the name of this exchange, as shown in query plans */
+    public abstract String getName();
+
+    public TupleDesc getTupleDesc() {
+        return producers.children[0].getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        producers.open(output);
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        producers.close(output);
+    }
+
+    /**
+     * Reads the tuples of the producers again, restarting them. An output
+     * of shared producers can only be rewound once all of them are closed,
+     * so Repartition and Broadcast don't support it.
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        return producers.take(output);
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return producers.children.clone();
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        producers.setChildren(children);
+    }
+
+    /**
+     * The producers of an exchange, which read their children on worker
+     * threads and route the tuples into the queues of the outputs.
+     */
+    static final class Producers {
+
+        private DbIterator[] children;
+        // the field whose hash picks the output of a tuple; negative to send
+        // every tuple to all the outputs
+        private final int field;
+        private final ArrayBlockingQueue<Tuple>[] queues;
+        private final boolean[] open;
+        // the outputs whose tuples are dropped, since they were closed
+        private final AtomicBoolean[] discarded;
+        private int numOpen;
+
+        private List<Future<?>> workers = new ArrayList<Future<?>>();
+        private volatile boolean cancelled;
+        // the number of producers that haven't finished
+        private final AtomicInteger running = new AtomicInteger();
+        private volatile Exception error;
+
+        /**
+         * Constructor.
+         *
+         * @param children
+         *            the iterators whose tuples are routed
+         * @param field
+         *            the field to route tuples on, or a negative number to
+         *            route every tuple to all outputs
+         * @param numOutputs
+         *            the number of outputs
+         */
+        @SuppressWarnings("unchecked")
+        Producers(DbIterator[] children, int field, int numOutputs) {
+            if (children.length == 0 || numOutputs < 1)
+                throw new IllegalArgumentException("an exchange needs producers and outputs");
+            for (DbIterator child : children)
+                if (!child.getTupleDesc().equals(children[0].getTupleDesc()))
+                    throw new IllegalArgumentException("producers of different tuples");
+            this.children = children.clone();
+            this.field = field;
+            this.queues = new ArrayBlockingQueue[numOutputs];
+            for (int i = 0; i < numOutputs; i++)
+                queues[i] = new ArrayBlockingQueue<Tuple>(QUEUE_CAPACITY);
+            this.open = new boolean[numOutputs];
+            this.discarded = new AtomicBoolean[numOutputs];
+            for (int i = 0; i < numOutputs; i++)
+                discarded[i] = new AtomicBoolean();
+        }
+
+        synchronized void setChildren(DbIterator[] children) {
+            if (numOpen > 0)
+                throw new IllegalStateException("exchange is open");
+            this.children = children.clone();
+        }
+
+        synchronized void open(int output) throws DbException {
+            if (open[output])
+                throw new DbException("exchange output " + output + " is already open");
+            if (numOpen == 0) {
+                start();
+            } else if (discarded[output].get()) {
+                throw new DbException("exchange output " + output
+                        + " can't be read again while the other outputs are open");
+            }
+            open[output] = true;
+            numOpen++;
+        }
+
+        synchronized void close(int output) {
+            if (!open[output])
+                return;
+            open[output] = false;
+            discarded[output].set(true);
+            queues[output].clear();
+            if (--numOpen == 0)
+                stop();
+        }
+
+        /** Starts a worker thread for every child. */
+        private void start() {
+            cancelled = false;
+            error = null;
+            for (AtomicBoolean d : discarded)
+                d.set(false);
+            for (ArrayBlockingQueue<Tuple> q : queues)
+                q.clear();
+            running.set(children.length);
+            for (final DbIterator child : children) {
+                workers.add(workerPool.submit(new Runnable() {
+                    public void run() {
+                        produce(child);
+                    }
+                }));
+            }
+        }
+
+        /** Stops the worker threads and waits for them to finish. */
+        private void stop() {
+            cancelled = true;
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // the failure was reported to the outputs already
+                }
+            }
+            workers.clear();
+            for (ArrayBlockingQueue<Tuple> q : queues)
+                q.clear();
+        }
+
+        /** Reads child to the end, routing its tuples; runs on a worker. */
+        private void produce(DbIterator child) {
+            try {
+                child.open();
+                try {
+                    while (!cancelled && child.hasNext()) {
+                        Tuple t = child.next();
+                        if (field < 0) {
+                            for (int i = 0; i < queues.length; i++)
+                                put(i, t);
+                        } else {
+                            put(partition(t.getField(field)), t);
+                        }
+                    }
+                } finally {
+                    child.close();
+                }
+            } catch (Exception e) {
+                error = e;
+            } catch (Error e) {
+                error = new DbException("exchange producer failed: " + e);
+                throw e;
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        private void put(int output, Tuple t) throws InterruptedException {
+            ArrayBlockingQueue<Tuple> q = queues[output];
+            while (!cancelled && !discarded[output].get()
+                    && !q.offer(t, POLL_MILLIS, TimeUnit.MILLISECONDS))
+                ;
+        }
+
+        /** @return the output the tuples of the specified field value go to */
+        private int partition(Field key) {
+            int h = key.hashCode() * 0x9E3779B9;
+            h ^= h >>> 16;
+            return Math.floorMod(h, queues.length);
+        }
+
+        /**
+         * @return the next tuple of the specified output, or null once all
+         *         the producers are done and the output is empty
+         */
+        Tuple take(int output) throws DbException, TransactionAbortedException {
+            ArrayBlockingQueue<Tuple> q = queues[output];
+            try {
+                while (true) {
+                    Tuple t = q.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (t != null)
+                        return t;
+                    Exception e = error;
+                    if (e instanceof DbException)
+                        throw (DbException) e;
+                    if (e instanceof TransactionAbortedException)
+                        throw (TransactionAbortedException) e;
+                    if (e instanceof RuntimeException)
+                        throw (RuntimeException) e;
+                    if (e != null)
+                        throw new DbException("exchange producer failed: " + e);
+                    // the producers put their last tuples before they stop
+                    // running, so the queue is complete once none runs
+                    if (running.get() == 0 && q.isEmpty())
+                        return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DbException("interrupted while reading an exchange");
+            }
+        }
+    }
+}
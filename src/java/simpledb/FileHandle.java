@@ -0,0 +1,206 @@
+package simpledb;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * FileHandle is the open file behind a DbFile. It keeps one FileChannel
+ * open for the lifetime of the table and reads and writes pages with
+ * positional FileChannel calls, which do not move a shared file pointer
+ * and so may be issued by any number of threads at once.
+ * <p>
+ * The channel is opened lazily on the first read or write and again after
+ * {@link #close}, or after it was closed because a thread blocked in it was
+ * interrupted; the Catalog closes the handles of the tables it drops. It is
+ * opened read-only until the first write, so that read-only table files can
+ * be scanned and reading a missing file fails instead of creating it.
+ * <p>
+ * In memory-mapped mode (see {@link #setMemoryMapped}) reads are served
+ * from a read-only mapping of the whole file instead of a read system call.
+ * The mapping is replaced when a read goes past its end because the file
+ * has grown. Writes always go through the channel; the operating system
+ * keeps the mapping consistent with them.
+ *
+ * @see HeapFile
+ * @see BTreeFile
+ * @Threadsafe
+ */
+public class FileHandle {
+
+    private final File f;
+    private FileChannel channel;
+    private boolean writable;
+    // the read-only channel replaced by a writable one, kept open until
+    // close() since other threads may still be reading through it
+    private FileChannel replaced;
+
+    private volatile boolean memoryMapped;
+    // null until the first mapped read, and after close()
+    private volatile MappedByteBuffer mapped;
+
+    /**
+     * @param f the file to read and write; it is created on the first write
+     *          if it does not exist
+     */
+    public FileHandle(File f) {
+        this.f = f;
+    }
+
+    /** @return the file this handle reads and writes */
+    public File getFile() {
+        return f;
+    }
+
+    /**
+     * @param write true if the channel is going to be written to
+     * @return the open channel, opened again if needed, and read-only
+     *         unless the file has been written through this handle
+     */
+    private synchronized FileChannel channel(boolean write) throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            writable = write;
+            channel = new RandomAccessFile(f, write ? "rw" : "r").getChannel();
+        } else if (write && !writable) {
+            if (replaced != null)
+                replaced.close();
+            replaced = channel;
+            writable = true;
+            channel = new RandomAccessFile(f, "rw").getChannel();
+        }
+        return channel;
+    }
+
+    /**
+     * Fills buf with the bytes of the file starting at position.
+     *
+     * @return the number of bytes read, which is less than buf.length only
+     *         if the end of the file was reached
+     */
+    public int read(long position, byte[] buf) throws IOException {
+        // nothing to read, even from a file that doesn't exist yet
+        if (buf.length == 0)
+            return 0;
+        if (memoryMapped) {
+            ByteBuffer region = mappedRegion(position + buf.length);
+            if (region != null) {
+                if (position >= region.capacity())
+                    return 0;
+                int n = (int) Math.min(buf.length, region.capacity() - position);
+                // duplicate() so that concurrent readers don't share a position
+                ByteBuffer view = region.duplicate();
+                view.position((int) position);
+                view.get(buf, 0, n);
+                return n;
+            }
+        }
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        FileChannel fc = channel(false);
+        while (bb.hasRemaining()) {
+            int n = fc.read(bb, position + bb.position());
+            if (n < 0)
+                break;
+        }
+        return bb.position();
+    }
+
+    /**
+     * Returns a mapping of the file that covers the first end bytes, or the
+     * whole file if it is shorter; maps the file again if the current
+     * mapping is too short and the file has grown since it was made.
+     *
+     * @return the mapping, or null if the file is too large to be mapped
+     *         into one buffer
+     */
+    private ByteBuffer mappedRegion(long end) throws IOException {
+        MappedByteBuffer region = mapped;
+        if (region != null && region.capacity() >= end)
+            return region;
+        synchronized (this) {
+            FileChannel fc = channel(false);
+            long size = fc.size();
+            if (size > Integer.MAX_VALUE)
+                return null;
+            if (mapped == null || mapped.capacity() < size)
+                mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return mapped;
+        }
+    }
+
+    /**
+     * Turns memory-mapped reads on or off. Meant for tables that are mostly
+     * read: the mapping covers the whole file, so a file that grows
+     * steadily is mapped again and again.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /** @return true if reads are served from a mapping of the file */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Reads exactly buf.length bytes starting at position.
+     *
+     * @throws EOFException if the file ends before buf is full
+     */
+    public void readFully(long position, byte[] buf) throws IOException {
+        if (read(position, buf) != buf.length)
+            throw new EOFException("unable to read " + buf.length + " bytes at offset "
+                    + position + " of " + f);
+    }
+
+    /**
+     * Writes all of data to the file starting at position, growing the
+     * file if needed.
+     */
+    public void write(long position, byte[] data) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        FileChannel fc = channel(true);
+        while (bb.hasRemaining())
+            fc.write(bb, position + bb.position());
+    }
+
+    /**
+     * Writes data at the current end of the file. Appends are serialized
+     * with each other, so concurrent appends never overlap.
+     *
+     * @return the offset the data was written at
+     */
+    public synchronized long append(byte[] data) throws IOException {
+        long position = channel(true).size();
+        write(position, data);
+        return position;
+    }
+
+    /** @return the current length of the file in bytes */
+    public synchronized long size() throws IOException {
+        // don't create the file just to find out that it is empty
+        if (channel == null || !channel.isOpen())
+            return f.length();
+        return channel.size();
+    }
+
+    /**
+     * Closes the channel. The handle stays usable: the next read or write
+     * opens the file again.
+     */
+    public synchronized void close() throws IOException {
+        // the mapping is unmapped once it is garbage collected
+        mapped = null;
+        if (replaced != null) {
+            replaced.close();
+            replaced = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap remembers which pages of a HeapFile are full, so that
+ * inserts can go straight to a page with an empty slot instead of reading
+ * every page of the file until they find one.
+ * <p>
+ * The map keeps one bit per page, set if the page is known to be full.
+ * Pages the map knows nothing about (pages added since the map was last
+ * written, or every page if there is no map on disk) count as having room
+ * until an insert finds otherwise. The bits of the pages as they are on
+ * disk are saved next to the heap file, in a file with the suffix ".fsm",
+ * every time a page is written, after the number of pages of the heap file.
+ * A saved map for a different number of pages than the heap file has
+ * belongs to an older file at the same path, and is discarded. The map is
+ * only a hint: a page wrongly
+ * marked as having room is corrected by the next insert that reads it,
+ * and a page wrongly marked full gets its bit cleared by the next delete
+ * from it.
+ *
+ * @see HeapFile#insertTuple
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    /** Suffix appended to the heap file name to name the map file. */
+    public static final String SUFFIX = ".fsm";
+
+    // the map file starts with the number of pages of the heap file
+    private static final int HEADER_SIZE = 4;
+
+    private final File heapFile;
+    private final FileHandle handle;
+
+    // pages full in the BufferPool's view, and as last written to disk
+    private BitSet full;
+    private BitSet fullOnDisk;
+    // no page before this one has room
+    private int firstFree;
+    // the number of heap file pages saved in the map file
+    private int numPagesOnDisk;
+
+    /**
+     * @param heapFile the heap file this map describes; the map is stored
+     *                 in the same directory, with SUFFIX appended to its
+     *                 name
+     */
+    public FreeSpaceMap(File heapFile) {
+        this.heapFile = heapFile;
+        this.handle = new FileHandle(mapFile(heapFile));
+    }
+
+    /** @return the file the map of the specified heap file is saved in */
+    public static File mapFile(File heapFile) {
+        return new File(heapFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Reads the saved map on first use; a missing map, or one saved for
+     * a different number of pages than the heap file has, is empty.
+     */
+    private void load() throws IOException {
+        if (full != null)
+            return;
+        int numPages = (int) (heapFile.length() / BufferPool.getPageSize());
+        byte[] bytes = new byte[(int) handle.size()];
+        handle.readFully(0, bytes);
+        if (bytes.length >= HEADER_SIZE
+                && ByteBuffer.wrap(bytes).getInt() == numPages) {
+            full = BitSet.valueOf(ByteBuffer.wrap(bytes, HEADER_SIZE,
+                    bytes.length - HEADER_SIZE));
+            numPagesOnDisk = numPages;
+        } else {
+            // the heap file changed without the map: forget the saved bits
+            // before the map file matches the heap file again
+            full = new BitSet();
+            if (bytes.length > HEADER_SIZE)
+                handle.write(HEADER_SIZE, new byte[bytes.length - HEADER_SIZE]);
+            numPagesOnDisk = -1;
+        }
+        fullOnDisk = (BitSet) full.clone();
+        firstFree = 0;
+    }
+
+    /**
+     * Returns the first page that may have an empty slot.
+     *
+     * @param numPages the number of pages in the heap file
+     * @return a page number, or numPages if every page is known to be full
+     */
+    public synchronized int firstPageWithSpace(int numPages) throws IOException {
+        load();
+        firstFree = full.nextClearBit(firstFree);
+        return Math.min(firstFree, numPages);
+    }
+
+    /**
+     * Records whether the specified page is full after an insert into it
+     * or a delete from it.
+     */
+    public synchronized void setFull(int pgNo, boolean isFull) throws IOException {
+        load();
+        full.set(pgNo, isFull);
+        if (!isFull)
+            firstFree = Math.min(firstFree, pgNo);
+    }
+
+    /**
+     * Records that the specified page was written to the heap file, and
+     * saves its bit.
+     */
+    public synchronized void pageWritten(int pgNo, boolean isFull) throws IOException {
+        setFull(pgNo, isFull);
+        fullOnDisk.set(pgNo, isFull);
+        // rewrite only the byte that holds the page's bit
+        int first = pgNo & ~7;
+        byte b = 0;
+        for (int i = 0; i < 8; i++) {
+            if (fullOnDisk.get(first + i))
+                b |= 1 << i;
+        }
+        handle.write(HEADER_SIZE + (pgNo >> 3), new byte[] { b });
+        if (pgNo >= numPagesOnDisk) {
+            // the page was appended to the heap file
+            numPagesOnDisk = Math.max(pgNo + 1,
+                    (int) (heapFile.length() / BufferPool.getPageSize()));
+            handle.write(0, ByteBuffer.allocate(HEADER_SIZE).putInt(numPagesOnDisk).array());
+        }
+    }
+
+    /** Closes the map file; the map is reread on its next use. */
+    public synchronized void close() throws IOException {
+        handle.close();
+        full = null;
+        fullOnDisk = null;
+    }
+}
@@ -0,0 +1,29 @@
+package simpledb;
+
+/**
+ * Gather is an exchange that returns the tuples of all of its children,
+ * each of which is read by a worker thread of its own, in the order they
+ * arrive. It is the top of a parallel part of a plan: the children are
+ * usually copies of the same operators over different partitions of their
+ * input, for instance the outputs of a {@link Repartition}.
+ */
+public class Gather extends Exchange {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor.
+     *
+     * @param children
+     *            the iterators whose tuples are returned, all with the same
+     *            TupleDesc
+     */
+    public Gather(DbIterator[] children) {
+        super(new Producers(children, -1, 1), 0);
+    }
+
+    public String getName() {
+        return "gather(" + getChildren().length + ")";
+    }
+
+}
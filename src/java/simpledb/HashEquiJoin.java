@@ -1,18 +1,50 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * HashEquiJoin is a hybrid hash join. It loads the inner (build) relation
+ * into a hash table; if that needs more memory than its budget, the tuples
+ * are split into FANOUT partitions by the hash of their join field. The
+ * first partition stays in memory and the others are written to spill
+ * files, as is the first one too if it alone still does not fit. Outer
+ * tuples of the partitions in memory are joined as they are read, the
+ * others are spilled as well, and every spilled pair of partitions is
+ * then joined by a HashEquiJoin of its own, with a different hash
+ * function. Partitions more than MAX_DEPTH levels down are loaded into
+ * memory whatever their size, since they may hold a single key.
  */
 public class HashEquiJoin extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** Number of pages of inner tuples kept in memory by default. */
+    public static final int DEFAULT_MEMORY_PAGES = 64;
+    /** Number of partitions the relations are split into when spilling. */
+    public static final int FANOUT = 8;
+    /** Number of times a partition may be split again. */
+    public static final int MAX_DEPTH = 3;
+
     private JoinPredicate pred;
     private DbIterator child1, child2;
     private Tuple left, right;
     private Map<Field, ArrayList<Tuple>> map = new ConcurrentHashMap<>();
 
+    private final int memoryBudget;
+    // the number of times the relations have been partitioned already
+    private final int depth;
+    // the number of inner tuples in map
+    private int numResident;
+    // which partitions are in spill files; null if nothing was spilled
+    private boolean[] onDisk;
+    private SpillFile[] innerSpills, outerSpills;
+    // the join of the spilled partitions being read, and the next one
+    private HashEquiJoin partitionJoin;
+    private int nextPartition;
+
     /**
      * Constructor. Accepts to children to join and the predicate to join them
      * on
@@ -25,10 +57,39 @@ public class HashEquiJoin extends Operator {
      *            Iterator for the right(inner) relation to join
      */
     public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, DEFAULT_MEMORY_PAGES * BufferPool.getPageSize());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @param memoryBudget
+     *            The number of bytes of inner tuples to keep in memory
+     */
+    public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2,
+            int memoryBudget) {
+        this(p, child1, child2, memoryBudget, 0);
+    }
+
+    private HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2,
+            int memoryBudget, int depth) {
         // some code goes here
         this.pred = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.memoryBudget = memoryBudget;
+        this.depth = depth;
+    }
+
+    /** @return the number of bytes of inner tuples kept in memory */
+    public int getMemoryBudget() {
+        return memoryBudget;
     }
 
     public JoinPredicate getJoinPredicate() {
@@ -59,22 +120,94 @@ public class HashEquiJoin extends Operator {
         child1.open();
         child2.open();
         map.clear();
-        while (child2.hasNext()){
-            right = child2.next();
-            Field key = right.getField(pred.getField2());
-            if (!map.containsKey(key)) map.put(key, new ArrayList<>());
-            ArrayList<Tuple> Tuplelist = map.get(key);
-            Tuplelist.add(right);
+        numResident = 0;
+        onDisk = null;
+        nextPartition = 0;
+        int maxResident = depth >= MAX_DEPTH ? Integer.MAX_VALUE
+                : Math.max(1, memoryBudget / child2.getTupleDesc().getSize());
+        try {
+            while (child2.hasNext()){
+                right = child2.next();
+                Field key = right.getField(pred.getField2());
+                if (onDisk != null && onDisk[partition(key)]) {
+                    innerSpills[partition(key)].add(right);
+                    continue;
+                }
+                if (!map.containsKey(key)) map.put(key, new ArrayList<>());
+                ArrayList<Tuple> Tuplelist = map.get(key);
+                Tuplelist.add(right);
+                if (++numResident > maxResident)
+                    spill();
+            }
+        } catch (IOException e) {
+            closeSpills();
+            throw new DbException("unable to spill join partitions: " + e);
         }
         super.open();
     }
 
+    /**
+     * Moves partitions of the hash table to spill files: all but the first
+     * partition the first time, and the first partition the second time.
+     */
+    private void spill() throws IOException {
+        if (onDisk == null) {
+            onDisk = new boolean[FANOUT];
+            innerSpills = new SpillFile[FANOUT];
+            outerSpills = new SpillFile[FANOUT];
+            for (int i = 0; i < FANOUT; i++) {
+                innerSpills[i] = new SpillFile(child2.getTupleDesc());
+                outerSpills[i] = new SpillFile(child1.getTupleDesc());
+                onDisk[i] = i > 0;
+            }
+        } else {
+            onDisk[0] = true;
+        }
+        Iterator<Map.Entry<Field, ArrayList<Tuple>>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Field, ArrayList<Tuple>> e = it.next();
+            int p = partition(e.getKey());
+            if (!onDisk[p])
+                continue;
+            for (Tuple t : e.getValue())
+                innerSpills[p].add(t);
+            numResident -= e.getValue().size();
+            it.remove();
+        }
+    }
+
+    /** @return the partition of the specified join field value */
+    private int partition(Field key) {
+        // a different hash function at every depth, or a partition that is
+        // split again would end up in a single partition
+        int h = key.hashCode() ^ (depth * 0x9E3779B9);
+        h *= 0x85EBCA6B;
+        h ^= h >>> 16;
+        return Math.floorMod(h, FANOUT);
+    }
+
+    private void closeSpills() {
+        if (partitionJoin != null) {
+            partitionJoin.close();
+            partitionJoin = null;
+        }
+        if (onDisk != null) {
+            for (int i = 0; i < FANOUT; i++) {
+                innerSpills[i].close();
+                outerSpills[i].close();
+            }
+            onDisk = null;
+            innerSpills = outerSpills = null;
+        }
+    }
+
     public void close() {
         // some code goes here
         child1.close();
         child2.close();
         map.clear();
         listIt = null;
+        closeSpills();
         super.close();
     }
 
@@ -98,6 +231,26 @@ public class HashEquiJoin extends Operator {
             next.setField(num1 + i, right.getField(i));
         return next;
     }
+
+    /**
+     * Starts the join of the next pair of spilled partitions that both
+     * hold tuples.
+     *
+     * @return false if there are no more such partitions
+     */
+    private boolean nextPartitionJoin() throws DbException, TransactionAbortedException {
+        while (onDisk != null && nextPartition < FANOUT) {
+            int p = nextPartition++;
+            if (!onDisk[p] || innerSpills[p].numTuples() == 0
+                    || outerSpills[p].numTuples() == 0)
+                continue;
+            partitionJoin = new HashEquiJoin(pred, outerSpills[p].iterator(),
+                    innerSpills[p].iterator(), memoryBudget, depth + 1);
+            partitionJoin.open();
+            return true;
+        }
+        return false;
+    }
     /**
      * Returns the next tuple generated by the join, or null if there are no
      * more tuples. Logically, this is the next tuple in r1 cross r2 that
@@ -125,6 +278,18 @@ public class HashEquiJoin extends Operator {
         while (child1.hasNext()){
             left = child1.next();
             Field key = left.getField(pred.getField1());
+            int p = onDisk == null ? -1 : partition(key);
+            if (p >= 0 && onDisk[p]) {
+                // no inner tuple matches an outer one of an empty partition
+                if (innerSpills[p].numTuples() == 0)
+                    continue;
+                try {
+                    outerSpills[p].add(left);
+                } catch (IOException e) {
+                    throw new DbException("unable to spill join partitions: " + e);
+                }
+                continue;
+            }
 
             ArrayList<Tuple> matchTupleList = map.get(key);
             if (matchTupleList == null) continue;
@@ -132,6 +297,15 @@ public class HashEquiJoin extends Operator {
             return fetchNext();
         }
 
+        // the outer relation has been read: join the spilled partitions
+        do {
+            if (partitionJoin != null) {
+                if (partitionJoin.hasNext())
+                    return partitionJoin.next();
+                partitionJoin.close();
+                partitionJoin = null;
+            }
+        } while (nextPartitionJoin());
         return null;
     }
 
@@ -24,10 +24,16 @@ public class HeapFile implements DbFile {
      */
     private final File f;
     private final TupleDesc td;
+    // one open channel shared by every read and write of this file
+    private final FileHandle handle;
+    // which pages are full, so that inserts don't have to look
+    private final FreeSpaceMap freeSpace;
     public HeapFile(File f, TupleDesc td) {
         // some code goes here
         this.f = f;
         this.td = td;
+        this.handle = new FileHandle(f);
+        this.freeSpace = new FreeSpaceMap(f);
 
     }
     /* 
@@ -39,19 +45,40 @@ public class HeapFile implements DbFile {
          param tid  ==>the ID of the transaction requesting the page
        */
         private final TransactionId tid;
+        // only tuples satisfying all of these are returned
+        private final List<Predicate> predicates;
+        // the pages read are startPage up to but excluding endPage, or up to
+        // the end of the file if endPage is negative
+        private final int startPage;
+        private final int endPage;
 
         
         private Iterator<Tuple> tupleIterator;
         private int index;
 
-        public HeapFileIterator(HeapFile file,TransactionId tid){
+        public HeapFileIterator(HeapFile file,TransactionId tid,List<Predicate> predicates,
+                int startPage,int endPage){
             this.heapFile = file;
             this.tid = tid;
+            this.predicates = predicates;
+            this.startPage = startPage;
+            this.endPage = endPage;
         }
+
+        private int endPage() {
+            int numPages = heapFile.numPages();
+            return endPage < 0 ? numPages : Math.min(endPage, numPages);
+        }
+
         @Override
         public void open() throws DbException, TransactionAbortedException {
             //index recorde the "read position" of heap_file
-            index = 0;
+            index = startPage;
+            if (endPage >= 0 && index >= endPage()) {
+                // an empty range of pages
+                tupleIterator = null;
+                return;
+            }
             //when open  only read one page!==>in case of mmemory out!
             tupleIterator = get_TupleIterator(index);
         }
@@ -62,7 +89,7 @@ public class HeapFile implements DbFile {
                 HeapPageId pid = new HeapPageId(heapFile.getId(),pageNumber);
                 //getPage has implement the function -- check whether the page is in bufferbool
                 HeapPage page = (HeapPage)Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
-                return page.iterator();
+                return page.iterator(predicates);
             }
             else
             {
@@ -83,10 +110,10 @@ public class HeapFile implements DbFile {
                 return true;
             }
             //to search next page
-            while (!tupleIterator.hasNext() && index <this.heapFile.numPages() - 1){
+            while (!tupleIterator.hasNext() && index < endPage() - 1){
                 index++;
                 PageId pageId = new HeapPageId(this.heapFile.getId(), index);
-                tupleIterator = ((HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_ONLY)).iterator();
+                tupleIterator = ((HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_ONLY)).iterator(predicates);
             }
 
             return tupleIterator.hasNext();
@@ -162,51 +189,20 @@ public class HeapFile implements DbFile {
         // some code goes here
         int tableId = pid.getTableId();
         int pgNo = pid.pageNumber();
-        int offset = pgNo * BufferPool.getPageSize();
-        // for random acess 
-        RandomAccessFile randomAccessFile = null;
-
-
-        try{
-            randomAccessFile = new RandomAccessFile(f,"r");
-            // the size of  file must be larger of equal the size pgNo * szie of per buffer pool page size
-            if((long) (pgNo + 1) *BufferPool.getPageSize() > randomAccessFile.length())
+        long offset = (long) pgNo * BufferPool.getPageSize();
+        byte[] bytes = new byte[BufferPool.getPageSize()];
+        try {
+            int read = handle.read(offset, bytes);
+            // the size of file must be larger or equal to (pgNo + 1) * page size
+            if (read != BufferPool.getPageSize())
             {
-                randomAccessFile.close();
                 throw new IllegalArgumentException(String.format("the pgNo %d of  Table(%d) exceeds the length of fill",  pgNo,tableId));
             }
-
-            byte[] bytes = new byte[BufferPool.getPageSize()];
-            randomAccessFile.seek(offset);
-            int read = randomAccessFile.read(bytes,0,BufferPool.getPageSize());
-            //memory out
-            if(read != BufferPool.getPageSize())
-            {
-                throw new IllegalArgumentException(String.format("The page(Table %d Page %d) has not been filled fully",tableId,pgNo));
-            }
             HeapPageId id = new HeapPageId(tableId,pgNo);
             return new HeapPage(id,bytes);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(String.format("The page(Table %d Page %d) can't be read", tableId, pgNo), e);
         }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
-        // whetherever there is errors, we should close the file !
-        finally 
-        {
-            try
-            {
-                if(randomAccessFile != null){
-                    randomAccessFile.close();
-                }
-            }
-            catch (Exception e)
-            {
-                e.printStackTrace();
-            }
-        }
-
-        throw new IllegalArgumentException(String.format("The page(Table %d Page %d) still remains  some errors!", tableId, pgNo));
     }
 
 
@@ -216,19 +212,37 @@ public class HeapFile implements DbFile {
         // some code goes here
         // not necessary for lab1
         PageId pid = page.getId();
-        int length = BufferPool.getPageSize();
-        int offset = pid.pageNumber() * length;
-
-        RandomAccessFile randomAccessFile;
+        long offset = (long) pid.pageNumber() * BufferPool.getPageSize();
+        handle.write(offset, page.getPageData());
         try {
-            randomAccessFile = new RandomAccessFile(f, "rw");
-            randomAccessFile.seek(offset);
-            randomAccessFile.write(page.getPageData());
+            freeSpace.pageWritten(pid.pageNumber(), ((HeapPage) page).getNumEmptySlots() == 0);
         } catch (IOException e) {
-            throw new IllegalArgumentException();
+            // the map is only a hint; the page was written all the same
+            e.printStackTrace();
         }
     }
 
+    /**
+     * Serve page reads of this file from a memory mapping of it instead of
+     * a read system call per page; meant for tables that are mostly read.
+     *
+     * @see FileHandle#setMemoryMapped
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        handle.setMemoryMapped(memoryMapped);
+    }
+
+    /** @return true if page reads are served from a memory mapping */
+    public boolean isMemoryMapped() {
+        return handle.isMemoryMapped();
+    }
+
+    // see DbFile.java for javadocs
+    public void close() throws IOException {
+        handle.close();
+        freeSpace.close();
+    }
+
     /**
      * Returns the number of pages in this HeapFile.
      */
@@ -236,7 +250,11 @@ public class HeapFile implements DbFile {
         // some code goes here
         //because the buffer pool will be fully used!
         //thus the tuples whose size less then  buffer_pool_size will not be pushed intot the buffer pool==>floor
-        return (int) Math.floor((double)getFile().length()/BufferPool.getPageSize());
+        try {
+            return (int) (handle.size() / BufferPool.getPageSize());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     // see DbFile.java for javadocs
@@ -244,22 +262,68 @@ public class HeapFile implements DbFile {
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
+        return insertTuples(tid, Collections.singletonList(t));
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuples(TransactionId tid, List<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        for (Tuple t : tuples) {
+            if (!t.getTupleDesc().equals(td))
+                throw new DbException("tupleDesc is mismatch.");
+        }
         ArrayList <Page> affectPages = new ArrayList<>();
-        for (int i = 0; i < numPages(); i++){
+        Iterator<Tuple> it = tuples.iterator();
+        int remaining = tuples.size();
+        // fill the pages that have room first; only visit the pages the
+        // free space map doesn't know to be full
+        int numPages = numPages();
+        for (int i = freeSpace.firstPageWithSpace(numPages); i < numPages && remaining > 0;
+                i = freeSpace.firstPageWithSpace(numPages)){
             HeapPageId pid = new HeapPageId(getId(), i);
             HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
-            if (page.getNumEmptySlots() != 0){
-                page.insertTuple(t);
+            int empty = page.getNumEmptySlots();
+            if (empty != 0) {
+                // dirty it now, so that the BufferPool can't evict the
+                // changes while later pages of the batch are read
+                page.markDirty(true, tid);
                 affectPages.add(page);
-                return affectPages;
             }
+            for (; empty > 0 && remaining > 0; empty--, remaining--)
+                page.insertTuple(it.next());
+            // a page found full means the map was out of date
+            freeSpace.setFull(i, empty == 0);
+        }
+        if (remaining == 0)
+            return affectPages;
+
+        // add all the pages the rest needs at the end of the file: reserve
+        // the space first so that concurrent inserts can't get the same page
+        // numbers, then write the filled pages with a single write
+        int pageSize = BufferPool.getPageSize();
+        int slotsPerPage = new HeapPage(new HeapPageId(getId(), numPages),
+                HeapPage.createEmptyPageData()).getNumEmptySlots();
+        int newPages = (remaining + slotsPerPage - 1) / slotsPerPage;
+        long offset = handle.append(new byte[newPages * pageSize]);
+        int first = (int) (offset / pageSize);
+        byte[] data = new byte[newPages * pageSize];
+        for (int i = 0; i < newPages; i++) {
+            HeapPage page = new HeapPage(new HeapPageId(getId(), first + i), HeapPage.createEmptyPageData());
+            for (int n = 0; n < slotsPerPage && remaining > 0; n++, remaining--)
+                page.insertTuple(it.next());
+            System.arraycopy(page.getPageData(), 0, data, i * pageSize, pageSize);
+            affectPages.add(page);
+        }
+        handle.write(offset, data);
+        // all but the last of the new pages are full
+        HeapPage last = (HeapPage) affectPages.get(affectPages.size() - 1);
+        try {
+            for (int i = 0; i < newPages; i++)
+                freeSpace.pageWritten(first + i, i < newPages - 1 || last.getNumEmptySlots() == 0);
+        } catch (IOException e) {
+            // the map is only a hint; the new pages are written all the same
+            e.printStackTrace();
         }
-
-        HeapPageId pid = new HeapPageId(getId(), numPages());
-        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
-        page.insertTuple(t);
-        writePage(page);
-        affectPages.add(page);
         return affectPages;
     }
 
@@ -272,6 +336,12 @@ public class HeapFile implements DbFile {
         PageId pid = t.getRecordId().getPageId();
         HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
         page.deleteTuple(t);
+        try {
+            freeSpace.setFull(pid.pageNumber(), false);
+        } catch (IOException e) {
+            // the map is only a hint; the page just keeps its stale bit
+            e.printStackTrace();
+        }
         affectPages.add(page);
         return affectPages;
   
@@ -285,7 +355,40 @@ public class HeapFile implements DbFile {
 
 public DbFileIterator iterator(TransactionId tid) {
     // some code goes here
-    return new HeapFileIterator(this,tid);
+    return iterator(tid, Collections.<Predicate>emptyList());
+}
+
+/**
+ * Returns an iterator over the tuples of this file that satisfy all of the
+ * specified predicates. The predicates are evaluated on the page bytes, so
+ * tuples that fail them are never built.
+ *
+ * @param predicates predicates on the fields of this file's tuples
+ * @see HeapPage#iterator(List)
+ */
+public DbFileIterator iterator(TransactionId tid, List<Predicate> predicates) {
+    return new HeapFileIterator(this,tid,new ArrayList<Predicate>(predicates),0,-1);
+}
+
+public DbFileIterator iterator(TransactionId tid, int startPage, int endPage) {
+    return iterator(tid, startPage, endPage, Collections.<Predicate>emptyList());
+}
+
+/**
+ * Returns an iterator over the tuples of the pages startPage up to but
+ * excluding endPage of this file that satisfy all of the specified
+ * predicates, so that disjoint ranges of pages can be scanned by different
+ * threads.
+ *
+ * @param startPage the number of the first page to read
+ * @param endPage one more than the number of the last page to read
+ * @param predicates predicates on the fields of this file's tuples
+ */
+public DbFileIterator iterator(TransactionId tid, int startPage, int endPage,
+        List<Predicate> predicates) {
+    if (startPage < 0 || endPage < startPage)
+        throw new IllegalArgumentException("invalid page range " + startPage + " to " + endPage);
+    return new HeapFileIterator(this,tid,new ArrayList<Predicate>(predicates),startPage,endPage);
 }
 
 
@@ -6,6 +6,10 @@ import java.io.*;
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * A HeapPage keeps the bytes it was read from and only decodes a tuple
+ * the first time it is asked for; single fields can be decoded without
+ * building the Tuple at all, see {@link #getField}.
  *
  * @see HeapFile
  * @see BufferPool
@@ -16,8 +20,13 @@ public class HeapPage implements Page {
     final HeapPageId pid;
     final TupleDesc td;
     final byte header[];
+    // the page as read; slot i is decoded from it while tuples[i] is null
+    final byte data[];
     final Tuple tuples[];
     final int numSlots;
+    // offset of each field within a tuple
+    private final int fieldOffsets[];
+    private int numEmptySlots;
     private TransactionId dirtyTid;
     private boolean dirtyFlag;
 
@@ -40,27 +49,28 @@ public class HeapPage implements Page {
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
+     * <p>
+     * The page keeps a reference to data, which must not be modified
+     * afterwards.
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
 
         // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
+        header = Arrays.copyOf(data, getHeaderSize());
+        this.data = data;
+        // tuples are decoded on demand
         tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+        fieldOffsets = new int[td.numFields()];
+        for (int j=1; j<fieldOffsets.length; j++)
+            fieldOffsets[j] = fieldOffsets[j-1] + td.getFieldType(j-1).getLen();
+        numEmptySlots = numSlots;
+        for (int i=0; i<numSlots; i++) {
+            if (isSlotUsed(i))
+                numEmptySlots--;
         }
-        dis.close();
 
         setBeforeImage();
     }
@@ -120,30 +130,23 @@ public class HeapPage implements Page {
         return this.pid;
     }
 
+    /** @return the offset in the page data of the specified slot */
+    private int slotOffset(int slotId) {
+        return header.length + slotId * td.getSize();
+    }
+
     /**
-     * Suck up tuples from the source file.
+     * Decode the tuple stored in the specified slot from the page data.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
-
+    private Tuple readTuple(int slotId) throws NoSuchElementException {
         // read fields in the tuple
         Tuple t = new Tuple(td);
         RecordId rid = new RecordId(pid, slotId);
         t.setRecordId(rid);
+        int offset = slotOffset(slotId);
         try {
             for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
+                Field f = td.getFieldType(j).parse(data, offset + fieldOffsets[j]);
                 t.setField(j, f);
             }
         } catch (java.text.ParseException e) {
@@ -154,6 +157,85 @@ public class HeapPage implements Page {
         return t;
     }
 
+    /**
+     * Returns the tuple in the specified slot, decoding it if this is the
+     * first time it is asked for.
+     *
+     * @throws NoSuchElementException if the slot is empty
+     */
+    public Tuple getTuple(int slotId) throws NoSuchElementException {
+        if (!isSlotUsed(slotId))
+            throw new NoSuchElementException("slot " + slotId + " is empty");
+        Tuple t = tuples[slotId];
+        if (t == null) {
+            t = readTuple(slotId);
+            tuples[slotId] = t;
+        }
+        return t;
+    }
+
+    /**
+     * Returns one field of the tuple in the specified slot. Unless the tuple
+     * was already decoded, only that field is decoded and no Tuple is
+     * built, so operators can test a row before paying for all of it.
+     *
+     * @param slotId the slot of the tuple
+     * @param i the index of the field
+     * @throws NoSuchElementException if the slot is empty
+     */
+    public Field getField(int slotId, int i) throws NoSuchElementException {
+        if (!isSlotUsed(slotId))
+            throw new NoSuchElementException("slot " + slotId + " is empty");
+        Tuple t = tuples[slotId];
+        if (t != null)
+            return t.getField(i);
+        try {
+            return td.getFieldType(i).parse(data, slotOffset(slotId) + fieldOffsets[i]);
+        } catch (java.text.ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
+    }
+
+    /**
+     * Evaluates the predicate against the tuple in the specified slot. Int
+     * fields of tuples that were not decoded yet are compared straight from
+     * the page bytes, without building any object.
+     *
+     * @param slotId a used slot
+     * @param p a predicate on the fields of this page's tuples
+     * @return true if the tuple satisfies the predicate
+     */
+    public boolean filter(int slotId, Predicate p) {
+        int i = p.getField();
+        if (tuples[slotId] != null || td.getFieldType(i) != Type.INT_TYPE
+                || !(p.getOperand() instanceof IntField))
+            return getField(slotId, i).compare(p.getOp(), p.getOperand());
+        int value = Type.readInt(data, slotOffset(slotId) + fieldOffsets[i]);
+        int operand = ((IntField) p.getOperand()).getValue();
+        switch (p.getOp()) {
+        case EQUALS:
+        case LIKE:
+            return value == operand;
+        case NOT_EQUALS:
+            return value != operand;
+        case GREATER_THAN:
+            return value > operand;
+        case GREATER_THAN_OR_EQ:
+            return value >= operand;
+        case LESS_THAN:
+            return value < operand;
+        case LESS_THAN_OR_EQ:
+            return value <= operand;
+        }
+        return false;
+    }
+
+    /** @return the number of tuple slots on this page, used or not */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
     /**
      * Generates a byte array representing the contents of this page.
      * Used to serialize this page to disk.
@@ -196,6 +278,16 @@ public class HeapPage implements Page {
                 continue;
             }
 
+            // non-empty slot that was never decoded or replaced: copy it as is
+            if (tuples[i] == null) {
+                try {
+                    dos.write(data, slotOffset(i), td.getSize());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+
             // non-empty slot
             for (int j=0; j<td.numFields(); j++) {
                 Field f = tuples[i].getField(j);
@@ -314,15 +406,8 @@ public class HeapPage implements Page {
      */
     public int getNumEmptySlots() {
         // some code goes here
-        int num_empty= 0;
-        for (int i =0;i<numSlots;i++)
-        {
-            if(!this.isSlotUsed(i))
-            {
-                num_empty++;
-            }
-        }
-        return num_empty;
+        // kept up to date by markSlotUsed
+        return numEmptySlots;
     }
 
     /**
@@ -365,10 +450,14 @@ public class HeapPage implements Page {
             int offset = i % 8;
 
             byte mask = (byte) (0x1 << offset);
+            if (value == ((header[number] & mask) != 0))
+                return;
             if (value) {
                 header[number] |= mask;
+                numEmptySlots--;
             } else {
                 header[number] &= ~mask;
+                numEmptySlots++;
             }
         }
 
@@ -380,16 +469,57 @@ public class HeapPage implements Page {
      */
     public Iterator<Tuple> iterator() {
         // some code goes here
-        List<Tuple> tuple_list = new ArrayList<>();
-        for (int i=0;i<numSlots;++i)
-        {
-            if(this.isSlotUsed(i))
-                 {
-                    tuple_list.add(this.tuples[i]);
-                 }
-            else break;
-        }
-        return tuple_list.iterator();
+        return iterator(Collections.<Predicate>emptyList());
+    }
+
+    /**
+     * @return an iterator over the tuples on this page that satisfy all of
+     * the specified predicates. Predicates are evaluated on the page bytes
+     * (see {@link #filter}), and only tuples that pass are decoded.
+     */
+    public Iterator<Tuple> iterator(final List<Predicate> predicates) {
+        return new Iterator<Tuple>() {
+            private int next = nextMatchingSlot(0);
+
+            public boolean hasNext() {
+                return next < numSlots;
+            }
+
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Tuple t = getTuple(next);
+                next = nextMatchingSlot(next + 1);
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private int nextMatchingSlot(int i) {
+                for (i = nextUsedSlot(i); i < numSlots; i = nextUsedSlot(i + 1)) {
+                    if (matches(i))
+                        break;
+                }
+                return i;
+            }
+
+            private boolean matches(int slotId) {
+                for (int j = 0; j < predicates.size(); j++) {
+                    if (!filter(slotId, predicates.get(j)))
+                        return false;
+                }
+                return true;
+            }
+        };
+    }
+
+    /** @return the first used slot at or after i, or numSlots if there is none */
+    private int nextUsedSlot(int i) {
+        while (i < numSlots && !isSlotUsed(i))
+            i++;
+        return i;
     }
 
 }
@@ -0,0 +1,187 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexNestedLoopJoin joins every outer tuple with the inner tuples it
+ * finds by searching the B+ tree of the inner table for the outer tuple's
+ * join field value, so the inner table is never scanned.
+ * <p>
+ * The inner child must be a SeqScan of a BTreeFile whose key field is the
+ * inner join field. The scan itself is not read: it only names the table,
+ * the transaction and the predicates pushed down into it, which the join
+ * applies to the tuples it finds.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private JoinPredicate pred;
+    private DbIterator child1;
+    private SeqScan child2;
+    private TupleDesc td;
+
+    // the outer tuple being joined, and its matches in the index
+    private Tuple outer;
+    private DbFileIterator matches;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children; any operator
+     *            but NOT_EQUALS and LIKE
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Scan of the right(inner) relation to join, a BTreeFile
+     *            keyed on the join field
+     * @throws IllegalArgumentException if the predicate or inner relation
+     *             can't be joined through the index
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, DbIterator child1, SeqScan child2) {
+        if (!canProbe(p, child2))
+            throw new IllegalArgumentException("can't probe the index of "
+                    + child2.getTableName() + " on " + p.getOperator());
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /**
+     * @return true if joins with the specified predicate can find their
+     *         matches in the specified scan's table through its index
+     */
+    public static boolean canProbe(JoinPredicate p, SeqScan inner) {
+        return canProbe(p.getOperator(), inner.getTableId(), p.getField2());
+    }
+
+    /**
+     * @return true if joins with the specified operator can find their
+     *         matches in the specified table through its index on the
+     *         specified field
+     */
+    public static boolean canProbe(Predicate.Op op, int tableId, int field) {
+        DbFile f = Database.getCatalog().getDatabaseFile(tableId);
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE
+                && f instanceof BTreeFile && ((BTreeFile) f).keyField() == field;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    /**
+     * @return
+     *       the field name of join field1. Should be quantified by
+     *       alias or table name.
+     * */
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(pred.getField1());
+    }
+
+    /**
+     * @return
+     *       the field name of join field2. Should be quantified by
+     *       alias or table name.
+     * */
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(pred.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        outer = null;
+        super.open();
+    }
+
+    private void closeMatches() {
+        if (matches != null) {
+            matches.close();
+            matches = null;
+        }
+    }
+
+    public void close() {
+        closeMatches();
+        outer = null;
+        child1.close();
+        super.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        closeMatches();
+        outer = null;
+        child1.rewind();
+    }
+
+    /**
+     * @return the operator that compares the index key with the outer join
+     *         field value the way the join predicate compares them the other
+     *         way around
+     */
+    private Predicate.Op keyOp() {
+        switch (pred.getOperator()) {
+        case GREATER_THAN:
+            return Predicate.Op.LESS_THAN;
+        case GREATER_THAN_OR_EQ:
+            return Predicate.Op.LESS_THAN_OR_EQ;
+        case LESS_THAN:
+            return Predicate.Op.GREATER_THAN;
+        case LESS_THAN_OR_EQ:
+            return Predicate.Op.GREATER_THAN_OR_EQ;
+        default:
+            return pred.getOperator();
+        }
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        BTreeFile f = (BTreeFile) Database.getCatalog().getDatabaseFile(child2.getTableId());
+        while (true) {
+            if (outer == null) {
+                if (!child1.hasNext())
+                    return null;
+                outer = child1.next();
+                matches = f.indexIterator(child2.getTransactionId(),
+                        new IndexPredicate(keyOp(), outer.getField(pred.getField1())));
+                matches.open();
+            }
+            while (matches.hasNext()) {
+                Tuple inner = matches.next();
+                boolean match = true;
+                for (Predicate p : child2.getPredicates())
+                    match = match && p.filter(inner);
+                if (match)
+                    return Join.mergeTuples(td, outer, inner);
+            }
+            closeMatches();
+            outer = null;
+        }
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = (SeqScan) children[1];
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+}
@@ -1,5 +1,6 @@
 package simpledb;
 import java.io.IOException;
+import java.util.ArrayList;
 /**
  * Inserts tuples read from the child operator into the tableId specified in the
  * constructor
@@ -8,6 +9,9 @@ public class Insert extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /** Tuples are handed to the BufferPool in batches of about this many pages. */
+    private static final int BATCH_PAGES = 8;
+
     private TransactionId tid;
     private DbIterator child;
     private int tableId;
@@ -46,13 +50,20 @@ public class Insert extends Operator {
         super.open();
         child.open();
         Count = 0;
+        // as many tuples as fit on BATCH_PAGES heap pages
+        int tupleBits = child.getTupleDesc().getSize() * 8 + 1;
+        int batchSize = Math.max(1, BufferPool.getPageSize() * 8 / tupleBits * BATCH_PAGES);
+        ArrayList<Tuple> batch = new ArrayList<Tuple>(batchSize);
         while (child.hasNext()){
-            Tuple next = child.next();
-            try {
-                Database.getBufferPool().insertTuple(tid, tableId, next);
-                Count ++;
-            } catch (IOException e){
-                e.printStackTrace();
+            batch.add(child.next());
+            if (batch.size() == batchSize || !child.hasNext()) {
+                try {
+                    Database.getBufferPool().insertTuples(tid, tableId, batch);
+                    Count += batch.size();
+                } catch (IOException e){
+                    e.printStackTrace();
+                }
+                batch.clear();
             }
         }
     }
@@ -1,31 +1,53 @@
 package simpledb;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Knows how to compute some aggregate over a set of IntFields.
+ * <p>
+ * Several aggregates of the same tuples can be computed in one pass. The
+ * groups are numbered in the order they are first seen, and the running
+ * values of every aggregate are kept in arrays of longs indexed by group
+ * number, so merging a tuple allocates nothing and SUM and AVG don't
+ * overflow before the result is produced. Int group values are looked up
+ * in an open addressing hash table of ints; other group values in a
+ * HashMap.
+ * <p>
+ * Aggregators of disjoint sets of tuples can be combined with
+ * {@link #merge}, which keeps the running values as longs, as
+ * {@link ParallelAggregate} does.
  */
 public class IntegerAggregator implements Aggregator {
 
     private static final long serialVersionUID = 1L;
     // which column used for grouping
     private int gbfield;
-    // which column used for aggregate
-    private int afiled;
+    // which columns used for the aggregates
+    private int[] afields;
     private Type gbfieldtype;
 
-    private Op aggreOp;
+    private Op[] aggreOps;
     private TupleDesc tupleDesc;
 
-    private Map<Field, Integer> GroupByValue;
-    private Map<Field, Integer> Counts;
+    // the number of every group value; int group values are numbered by
+    // intGroups and any others by groups
+    private IntGroupIndex intGroups;
+    private Map<Field, Integer> groups;
+    private ArrayList<Field> groupValues = new ArrayList<>();
+    private int numGroups;
+
+    // for each aggregate and group, the MIN, MAX or SUM of the values merged
+    // so far, and for each group the number of tuples merged so far
+    private long[][] values;
+    private long[] counts;
 
     /**
      * Aggregate constructor
-     * 
+     *
      * @param gbfield
      *                    the 0-based index of the group-by field in the tuple, or
      *                    NO_GROUPING if there is no grouping
@@ -40,114 +62,271 @@ public class IntegerAggregator implements Aggregator {
      */
 
     public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        // some code goes here
+        this(gbfield, gbfieldtype, new int[] { afield }, new Op[] { what });
+    }
+
+    /**
+     * Constructor for computing several aggregates in one pass. The result
+     * tuples have one aggregate value for each of them, in order, after the
+     * group value.
+     *
+     * @param gbfield
+     *                    the 0-based index of the group-by field in the tuple, or
+     *                    NO_GROUPING if there is no grouping
+     * @param gbfieldtype
+     *                    the type of the group by field, or null if there is no
+     *                    grouping
+     * @param afields
+     *                    the 0-based indexes of the aggregate fields in the tuple
+     * @param whats
+     *                    the aggregation operator of each aggregate field
+     * @throws UnsupportedOperationException for SUM_COUNT and SC_AVG
+     */
+    public IntegerAggregator(int gbfield, Type gbfieldtype, int[] afields, Op[] whats) {
+        if (afields.length == 0 || afields.length != whats.length)
+            throw new IllegalArgumentException(
+                    "need one operator for each of one or more aggregate fields");
+        for (Op what : whats)
+            if (what == Op.SUM_COUNT || what == Op.SC_AVG)
+                throw new UnsupportedOperationException(what + " is not supported");
         this.gbfield = gbfield;
         this.gbfieldtype = gbfieldtype;
-        this.afiled = afield;
-        this.aggreOp = what;
+        this.afields = afields.clone();
+        this.aggreOps = whats.clone();
 
-        if (gbfield == Aggregator.NO_GROUPING)
-            this.tupleDesc = new TupleDesc(new Type[] { Type.INT_TYPE }, new String[] { "aggregateValue" });
+        ArrayList<Type> types = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>();
+        if (gbfield != Aggregator.NO_GROUPING) {
+            types.add(gbfieldtype);
+            names.add("groupValue");
+        }
+        for (int i = 0; i < afields.length; i++) {
+            String name = afields.length == 1 ? "aggregateValue" : "aggregateValue" + i;
+            types.add(Type.INT_TYPE);
+            names.add(name);
+        }
+        this.tupleDesc = new TupleDesc(types.toArray(new Type[0]),
+                names.toArray(new String[0]));
+
+        if (gbfieldtype == Type.INT_TYPE)
+            intGroups = new IntGroupIndex();
         else
-            this.tupleDesc = new TupleDesc(new Type[] { gbfieldtype, Type.INT_TYPE },
-                    new String[] { "groupValue", "aggregateValue" });
-        GroupByValue = new HashMap<>();
-        Counts = new HashMap<>();
+            groups = new HashMap<>();
+        values = new long[afields.length][16];
+        counts = new long[16];
+    }
+
+    /** @return the number of the specified group value, numbering it if it is new */
+    private int groupOf(Field groupfield) {
+        if (gbfield == Aggregator.NO_GROUPING)
+            return numGroups == 0 ? newGroup(null) : 0;
+        if (intGroups != null) {
+            int key = ((IntField) groupfield).getValue();
+            int g = intGroups.get(key);
+            if (g < 0) {
+                g = newGroup(groupfield);
+                intGroups.put(key, g);
+            }
+            return g;
+        }
+        Integer g = groups.get(groupfield);
+        if (g == null) {
+            g = newGroup(groupfield);
+            groups.put(groupfield, g);
+        }
+        return g;
+    }
+
+    private int newGroup(Field groupfield) {
+        if (numGroups == counts.length) {
+            counts = Arrays.copyOf(counts, 2 * numGroups);
+            for (int i = 0; i < values.length; i++)
+                values[i] = Arrays.copyOf(values[i], 2 * numGroups);
+        }
+        groupValues.add(groupfield);
+        return numGroups++;
     }
 
     /**
      * Merge a new tuple into the aggregate, grouping as indicated in the
      * constructor
-     * 
+     *
      * @param tup
      *            the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        // some code goes here
-        Field groupfield;
-        if (gbfield == Aggregator.NO_GROUPING)
-            groupfield = null;
-        else
-            groupfield = tup.getField(gbfield);
-
-        Integer oldvalue = GroupByValue.get(groupfield);
-        Integer nowvalue = ((IntField) tup.getField(afiled)).getValue();
-        Integer newvalue = null;
-
-        switch (aggreOp){
+        int g = groupOf(gbfield == Aggregator.NO_GROUPING ? null : tup.getField(gbfield));
+        boolean first = counts[g]++ == 0;
+        for (int i = 0; i < afields.length; i++) {
+            long value = ((IntField) tup.getField(afields[i])).getValue();
+            long[] acc = values[i];
+            switch (aggreOps[i]) {
             case MIN:
-                {
-                    if (oldvalue == null) newvalue = nowvalue;
-                    else newvalue = Integer.min(oldvalue, nowvalue);
-                    break;
-                }
+                acc[g] = first ? value : Math.min(acc[g], value);
+                break;
             case MAX:
-                {
-                    if (oldvalue == null) newvalue = nowvalue;
-                    else newvalue = Integer.max(oldvalue, nowvalue);
-                    break;
-                }
-            case COUNT:
-                {
-                    if (oldvalue == null) newvalue = 1;
-                    else newvalue = oldvalue + 1;
-                    break;
-                }
+                acc[g] = first ? value : Math.max(acc[g], value);
+                break;
             case SUM:
-                {
-                    if (oldvalue == null) newvalue = nowvalue;
-                    else newvalue = nowvalue + oldvalue;
-                    break;
-                }
             case AVG:
-                {
-                    if (oldvalue == null) newvalue = nowvalue;
-                    else newvalue = nowvalue + oldvalue;
-
-                    Integer cnt = Counts.getOrDefault(groupfield, 0);
-                    Counts.put(groupfield, cnt + 1);
+                acc[g] += value;
+                break;
+            default:
+                // COUNT is counts[g]
+                break;
+            }
+        }
+    }
 
+    /**
+     * Merges the groups of other into this aggregator, as if the tuples
+     * merged into other had been merged into this one instead.
+     *
+     * @param other an aggregator of the same aggregates, grouped on a field
+     *              of the same type
+     * @throws IllegalArgumentException if other computes other aggregates
+     */
+    void merge(IntegerAggregator other) {
+        if (!Arrays.equals(aggreOps, other.aggreOps)
+                || (gbfield == Aggregator.NO_GROUPING) != (other.gbfield == Aggregator.NO_GROUPING)
+                || (gbfieldtype != null && !gbfieldtype.equals(other.gbfieldtype)))
+            throw new IllegalArgumentException("can't merge different aggregates");
+        for (int og = 0; og < other.numGroups; og++) {
+            int g = groupOf(other.groupValues.get(og));
+            boolean first = counts[g] == 0;
+            counts[g] += other.counts[og];
+            for (int i = 0; i < afields.length; i++) {
+                long value = other.values[i][og];
+                long[] acc = values[i];
+                switch (aggreOps[i]) {
+                case MIN:
+                    acc[g] = first ? value : Math.min(acc[g], value);
+                    break;
+                case MAX:
+                    acc[g] = first ? value : Math.max(acc[g], value);
+                    break;
+                default:
+                    acc[g] += value;
                     break;
                 }
+            }
         }
+    }
 
-        GroupByValue.put(groupfield, newvalue);
+    public boolean hasGroup(Tuple tup) {
+        if (gbfield == Aggregator.NO_GROUPING)
+            return numGroups > 0;
+        if (intGroups != null)
+            return intGroups.get(((IntField) tup.getField(gbfield)).getValue()) >= 0;
+        return groups.containsKey(tup.getField(gbfield));
+    }
+
+    public int numGroups() {
+        return numGroups;
     }
 
     /**
      * Create a DbIterator over group aggregate results.
-     * 
+     *
      * @return a DbIterator whose tuples are the pair (groupVal, aggregateVal)
      *         if using group, or a single (aggregateVal) if no grouping. The
      *         aggregateVal is determined by the type of aggregate specified in
      *         the constructor.
+     * @throws ArithmeticException if a SUM or COUNT doesn't fit in an int;
+     *         its message names the aggregate and the group
      */
     public DbIterator iterator() {
-        // some code goes here
-    //     throw new UnsupportedOperationException("please implement me for lab3");
-    // }
-    ArrayList <Tuple> tuples = new ArrayList<>();
-    for (Map.Entry<Field, Integer> entry : GroupByValue.entrySet())
-    {
-        Tuple tuple = new Tuple(tupleDesc);
-        Integer value = entry.getValue();
-        if (aggreOp == Op.AVG) 
-        {
-            value = value / Counts.get(entry.getKey());
+        ArrayList<Tuple> tuples = new ArrayList<>(numGroups);
+        for (int g = 0; g < numGroups; g++) {
+            Tuple tuple = new Tuple(tupleDesc);
+            int f = 0;
+            if (gbfield != Aggregator.NO_GROUPING)
+                tuple.setField(f++, groupValues.get(g));
+            for (int i = 0; i < afields.length; i++) {
+                long value;
+                switch (aggreOps[i]) {
+                case COUNT:
+                    value = counts[g];
+                    break;
+                case AVG:
+                    value = values[i][g] / counts[g];
+                    break;
+                default:
+                    value = values[i][g];
+                    break;
+                }
+                tuple.setField(f++, new IntField(toInt(value, i, g)));
+            }
+            tuples.add(tuple);
         }
+        return new TupleIterator(tupleDesc, tuples);
+    }
 
-        if (gbfield == Aggregator.NO_GROUPING)
-        {
-            tuple.setField(0, new IntField(value));
-        } 
-        else 
-        {
-            tuple.setField(0, entry.getKey());
-            tuple.setField(1, new IntField(value));
-        }
-        tuples.add(tuple);
+    /**
+     * @return value, the result of the i-th aggregate of group g
+     * @throws ArithmeticException if value doesn't fit in an int
+     */
+    private int toInt(long value, int i, int g) {
+        if (value != (int) value)
+            throw new ArithmeticException(aggreOps[i] + " of field " + afields[i]
+                    + (gbfield == Aggregator.NO_GROUPING ? "" : " for group " + groupValues.get(g))
+                    + " overflows an int: " + value);
+        return (int) value;
     }
-    return new TupleIterator(tupleDesc, tuples);
+
+    /**
+     * Maps int keys to group numbers, in an open addressing hash table with
+     * linear probing that is kept at most half full.
+     */
+    private static class IntGroupIndex implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private int[] keys = new int[16];
+        // the group number of each slot plus one; 0 for empty slots
+        private int[] groups = new int[16];
+        private int size;
+
+        private static int slot(int key, int mask) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /** @return the group number of key, or -1 if it has none */
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int s = slot(key, mask); groups[s] != 0; s = (s + 1) & mask)
+                if (keys[s] == key)
+                    return groups[s] - 1;
+            return -1;
+        }
+
+        /** Sets the group number of a key that has none yet. */
+        void put(int key, int group) {
+            if (2 * (size + 1) > keys.length)
+                resize(2 * keys.length);
+            insert(key, group + 1);
+            size++;
+        }
+
+        private void insert(int key, int slotValue) {
+            int mask = keys.length - 1;
+            int s = slot(key, mask);
+            while (groups[s] != 0)
+                s = (s + 1) & mask;
+            keys[s] = key;
+            groups[s] = slotValue;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldGroups = groups;
+            keys = new int[capacity];
+            groups = new int[capacity];
+            for (int s = 0; s < oldKeys.length; s++)
+                if (oldGroups[s] != 0)
+                    insert(oldKeys[s], oldGroups[s]);
+        }
     }
 
 }
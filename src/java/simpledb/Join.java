@@ -1,10 +1,16 @@
 package simpledb;
 
-import java.lang.reflect.Array;
 import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * It is a pipelined nested loops join: every call to next() continues the
+ * scan of the inner relation for the current outer tuple from where the
+ * previous call left off, so no join results are buffered. The inner tuples
+ * are kept in memory as they are read during the first pass, and later
+ * passes go over that copy: the inner child may be an operator tree that
+ * would otherwise be evaluated again for every outer tuple.
  */
 public class Join extends Operator {
 
@@ -27,8 +33,13 @@ public class Join extends Operator {
     private DbIterator child1;
     private DbIterator child2;
     private TupleDesc mergedTupleDesc;
-    private ArrayList<Tuple> joinedArray;
-    private Iterator<Tuple> joinedIterator;
+    // the outer tuple the inner relation is being scanned for, or null
+    private Tuple outer;
+    // the inner tuples read so far, and whether child2 has been read to the end
+    private ArrayList<Tuple> innerTuples = new ArrayList<Tuple>();
+    private boolean innerComplete;
+    // the next inner tuple to join with outer
+    private int innerPos;
 
 
     public Join(JoinPredicate p, DbIterator child1, DbIterator child2) {
@@ -37,7 +48,6 @@ public class Join extends Operator {
         this.child1 = child1;
         this.child2 = child2;
         this.mergedTupleDesc = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
-        this.joinedArray = new ArrayList<Tuple>();
     }
 
     public JoinPredicate getJoinPredicate() {
@@ -77,39 +87,18 @@ public class Join extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         // some code goes here
-        super.open();
         child1.open();
         child2.open();
-        int lenLeftTuple = child1.getTupleDesc().tdItems.size();
-        int lenRightTuple = child2.getTupleDesc().tdItems.size();
-        while (child1.hasNext())
-        {
-            Tuple tmpLeft = child1.next();
-            child2.rewind();
-            while (child2.hasNext())
-            {
-                Tuple tmpRight = child2.next();
-                if (this.joinPredicate.filter(tmpLeft, tmpRight))
-                {
-                    Tuple joinedTuple = new Tuple(this.mergedTupleDesc);
-                    for (int i = 0; i < lenLeftTuple; i++)
-                    {
-                        joinedTuple.setField(i, tmpLeft.getField(i));
-                    }
-                    for (int i = 0; i < lenRightTuple; i++)
-                    {
-                        joinedTuple.setField(i + lenLeftTuple, tmpRight.getField(i));
-                    }
-                    this.joinedArray.add(joinedTuple);
-                }
-            }
-        }
-        this.joinedIterator = this.joinedArray.iterator();
+        this.outer = null;
+        this.innerTuples.clear();
+        this.innerComplete = false;
+        super.open();
     }
 
     public void close() {
         // some code goes here
-        this.joinedArray.clear();
+        this.outer = null;
+        this.innerTuples.clear();
         this.child1.close();
         this.child2.close();
         super.close();
@@ -117,7 +106,48 @@ public class Join extends Operator {
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
-        this.joinedIterator = this.joinedArray.iterator();
+        // the copy of the inner relation stays valid
+        this.child1.rewind();
+        this.outer = null;
+    }
+
+    /**
+     * Returns the next inner tuple of the current pass, reading it from
+     * child2 if the first pass has not got that far yet.
+     *
+     * @return the tuple, or null at the end of the inner relation
+     */
+    private Tuple nextInner() throws DbException, TransactionAbortedException {
+        if (this.innerPos < this.innerTuples.size())
+            return this.innerTuples.get(this.innerPos++);
+        if (this.innerComplete || !child2.hasNext())
+        {
+            this.innerComplete = true;
+            return null;
+        }
+        Tuple inner = child2.next();
+        this.innerTuples.add(inner);
+        this.innerPos++;
+        return inner;
+    }
+
+    /**
+     * Concatenates the fields of two tuples into a tuple of the specified
+     * (merged) TupleDesc.
+     */
+    static Tuple mergeTuples(TupleDesc td, Tuple left, Tuple right) {
+        int lenLeftTuple = left.getTupleDesc().numFields();
+        int lenRightTuple = right.getTupleDesc().numFields();
+        Tuple joinedTuple = new Tuple(td);
+        for (int i = 0; i < lenLeftTuple; i++)
+        {
+            joinedTuple.setField(i, left.getField(i));
+        }
+        for (int i = 0; i < lenRightTuple; i++)
+        {
+            joinedTuple.setField(i + lenLeftTuple, right.getField(i));
+        }
+        return joinedTuple;
     }
 
     /**
@@ -140,11 +170,23 @@ public class Join extends Operator {
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
-        if (this.joinedIterator.hasNext())
+        while (true)
         {
-            return this.joinedIterator.next();
+            if (this.outer == null)
+            {
+                if (!child1.hasNext())
+                    return null;
+                this.outer = child1.next();
+                this.innerPos = 0;
+            }
+            Tuple inner;
+            while ((inner = nextInner()) != null)
+            {
+                if (this.joinPredicate.filter(this.outer, inner))
+                    return mergeTuples(this.mergedTupleDesc, this.outer, inner);
+            }
+            this.outer = null;
         }
-        return null;
     }
 
     @Override
@@ -78,12 +78,91 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        LogicalJoinNode.Algorithm algorithm = lj.algorithm;
+        // the inner relation of an index nested loops join must be the
+        // indexed table itself; otherwise join as if none was chosen
+        if (algorithm == LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP
+                && !(plan2 instanceof SeqScan
+                        && IndexNestedLoopJoin.canProbe(p, (SeqScan) plan2)))
+            algorithm = null;
+        if (algorithm == null)
+            algorithm = lj.p == Predicate.Op.EQUALS ? LogicalJoinNode.Algorithm.HASH
+                    : LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP;
+        switch (algorithm) {
+        case HASH:
+            j = new HashEquiJoin(p,plan1,plan2);
+            break;
+        case BLOCK_NESTED_LOOP:
+            j = new BlockNestedLoopJoin(p,plan1,plan2);
+            break;
+        case SORT_MERGE:
+            if (!isSortedOn(plan1, t1id))
+                plan1 = new OrderBy(t1id, true, plan1);
+            if (!isSortedOn(plan2, t2id))
+                plan2 = new OrderBy(t2id, true, plan2);
+            j = new SortMergeJoin(p,plan1,plan2);
+            break;
+        case INDEX_NESTED_LOOP:
+            j = new IndexNestedLoopJoin(p,plan1,(SeqScan) plan2);
+            break;
+        default:
+            j = new Join(p,plan1,plan2);
+        }
 
         return j;
 
     }
 
+    /**
+     * @return true if the specified iterator returns its tuples in
+     *         ascending order of the specified field
+     */
+    static boolean isSortedOn(DbIterator it, int field) {
+        if (it instanceof OrderBy) {
+            OrderBy o = (OrderBy) it;
+            return o.isASC() && o.getOrderByField() == field;
+        }
+        if (it instanceof SortMergeJoin)
+            return ((SortMergeJoin) it).isSortedOn(field);
+        if (it instanceof Join || it instanceof IndexNestedLoopJoin) {
+            // the output follows the outer relation
+            DbIterator outer = ((Operator) it).getChildren()[0];
+            return field < outer.getTupleDesc().numFields() && isSortedOn(outer, field);
+        }
+        if (it instanceof Filter)
+            return isSortedOn(((Filter) it).getChildren()[0], field);
+        if (it instanceof StreamingAggregate) {
+            // the groups are returned in the order of the child
+            StreamingAggregate a = (StreamingAggregate) it;
+            return field == 0 && a.groupField() != Aggregator.NO_GROUPING
+                    && isSortedOn(a.getChildren()[0], a.groupField());
+        }
+        if (it instanceof SeqScan) {
+            // a B+ tree file is scanned in key order
+            DbFile f = Database.getCatalog().getDatabaseFile(((SeqScan) it).getTableId());
+            return f instanceof BTreeFile && ((BTreeFile) f).keyField() == field;
+        }
+        return false;
+    }
+
+    /**
+     * @return the predicate of the specified join operator, or null if o is
+     *         not one of the join operators
+     */
+    static JoinPredicate getJoinPredicate(DbIterator o) {
+        if (o instanceof Join)
+            return ((Join) o).getJoinPredicate();
+        if (o instanceof HashEquiJoin)
+            return ((HashEquiJoin) o).getJoinPredicate();
+        if (o instanceof BlockNestedLoopJoin)
+            return ((BlockNestedLoopJoin) o).getJoinPredicate();
+        if (o instanceof SortMergeJoin)
+            return ((SortMergeJoin) o).getJoinPredicate();
+        if (o instanceof IndexNestedLoopJoin)
+            return ((IndexNestedLoopJoin) o).getJoinPredicate();
+        return null;
+    }
+
     /**
      * Estimate the cost of a join.
      * 
@@ -121,12 +200,179 @@ public class JoinOptimizer {
             // HINT: You may need to use the variable "j" if you implemented
             // a join algorithm that's more complicated than a basic
             // nested-loops join.
+            LogicalJoinNode.Algorithm algorithm = j.algorithm;
+            if (algorithm == null)
+                algorithm = cheapestAlgorithm(j, card1, card2, cost1, cost2);
+            return estimateJoinCost(algorithm, j, card1, card2, cost1, cost2);
+        }
+    }
+
+    /**
+     * Estimate the cost of computing a join with the specified algorithm;
+     * see {@link #estimateJoinCost(LogicalJoinNode, int, int, double, double)}.
+     * A join may hold as much as the default memory budget of a
+     * HashEquiJoin in memory.
+     *
+     * @return the estimated cost, or Double.MAX_VALUE if the algorithm can't
+     *         compute the join, or would need more memory than that
+     */
+    public double estimateJoinCost(LogicalJoinNode.Algorithm algorithm,
+            LogicalJoinNode j, int card1, int card2, double cost1, double cost2) {
+        return estimateJoinCost(algorithm, j, card1, card2, cost1, cost2,
+                false, false);
+    }
+
+    /**
+     * Estimate the cost of computing a join with the specified algorithm,
+     * given whether its inputs are already sorted on their join fields.
+     *
+     * @param sorted1
+     *            true if the left-hand side is in ascending order of the
+     *            join field
+     * @param sorted2
+     *            true if the right-hand side is in ascending order of the
+     *            join field
+     * @return the estimated cost, or Double.MAX_VALUE if the algorithm can't
+     *         compute the join, or would need more memory than that
+     */
+    public double estimateJoinCost(LogicalJoinNode.Algorithm algorithm,
+            LogicalJoinNode j, int card1, int card2, double cost1, double cost2,
+            boolean sorted1, boolean sorted2) {
+        return estimateJoinCost(algorithm, j, card1, card2, cost1, cost2,
+                sorted1, sorted2, false);
+    }
+
+    /**
+     * Estimate the cost of computing a join with the specified algorithm,
+     * given whether its inputs are already sorted on their join fields and
+     * whether the right-hand side can be searched through an index.
+     *
+     * @param indexed2
+     *            true if the right-hand side is a BTreeFile keyed on the
+     *            join field, read directly rather than through a subplan
+     * @return the estimated cost, or Double.MAX_VALUE if the algorithm can't
+     *         compute the join, or would need more memory than that
+     */
+    public double estimateJoinCost(LogicalJoinNode.Algorithm algorithm,
+            LogicalJoinNode j, int card1, int card2, double cost1, double cost2,
+            boolean sorted1, boolean sorted2, boolean indexed2) {
+        if (j instanceof LogicalSubplanJoinNode)
+            return card1 + cost1 + cost2;
+        double memory = (double) HashEquiJoin.DEFAULT_MEMORY_PAGES * BufferPool.getPageSize();
+        double innerBytes = (double) card2 * tupleDesc(j.t2Alias).getSize();
+        switch (algorithm) {
+        case NESTED_LOOP:
+            // Join keeps a copy of the inner relation after the first pass
+            if (innerBytes > memory)
+                return Double.MAX_VALUE;
+            return cost1 + cost2 + (double) card1 * card2;
+        case BLOCK_NESTED_LOOP:
+            // one scan of the inner relation per block of outer tuples
+            int blockTuples = BlockNestedLoopJoin.blockTuples(
+                    BlockNestedLoopJoin.DEFAULT_BLOCK_PAGES * BufferPool.getPageSize(),
+                    tupleDesc(j.t1Alias));
+            double blocks = Math.ceil((double) card1 / blockTuples);
+            return cost1 + blocks * cost2 + (double) card1 * card2;
+        case SORT_MERGE:
+            if (!SortMergeJoin.supports(j.p))
+                return Double.MAX_VALUE;
+            double mergeCost = cost1 + cost2 + card1 + card2;
+            if (!sorted1)
+                mergeCost += sortCost(card1);
+            if (!sorted2)
+                mergeCost += sortCost(card2);
+            // a range join reads the matching prefix of one relation again
+            // for every tuple of the other; see estimateTableJoinCardinality
+            // for the number of matches
+            if (j.p != Predicate.Op.EQUALS)
+                mergeCost += 0.3 * card1 * card2;
+            return mergeCost;
+        case HASH:
+            if (j.p != Predicate.Op.EQUALS)
+                return Double.MAX_VALUE;
+            // one hash table insert per inner tuple and one probe per outer
+            // tuple. Spilling an inner relation that doesn't fit in memory
+            // is not charged for, so that swapping the relations doesn't
+            // change the cost of an equality join
+            return cost1 + cost2 + card1 + card2;
+        case INDEX_NESTED_LOOP:
+            if (!indexed2 || !SortMergeJoin.supports(j.p))
+                return Double.MAX_VALUE;
+            // the inner relation is never scanned: one descent of the tree
+            // per outer tuple, plus the matches it reads; see
+            // estimateTableJoinCardinality for the number of matches
+            double probes = (double) card1
+                    * (Math.log(Math.max(card2, 2)) / Math.log(2) + 1);
             if (j.p == Predicate.Op.EQUALS)
-            {
-                return cost1 + cost2 + card1 * card2;
+                return cost1 + probes + Math.max(card1, card2);
+            return cost1 + probes + 0.3 * card1 * card2;
+        default:
+            return Double.MAX_VALUE;
+        }
+    }
+
+    /** @return the number of comparisons needed to sort card tuples */
+    private static double sortCost(int card) {
+        return card * (Math.log(Math.max(card, 2)) / Math.log(2));
+    }
+
+    /**
+     * @return the algorithm with the lowest estimated cost for the specified
+     *         join
+     */
+    public LogicalJoinNode.Algorithm cheapestAlgorithm(LogicalJoinNode j,
+            int card1, int card2, double cost1, double cost2) {
+        return cheapestAlgorithm(j, card1, card2, cost1, cost2, false, false);
+    }
+
+    /**
+     * @return the algorithm with the lowest estimated cost for the specified
+     *         join, given whether its inputs are already sorted on their
+     *         join fields
+     */
+    public LogicalJoinNode.Algorithm cheapestAlgorithm(LogicalJoinNode j,
+            int card1, int card2, double cost1, double cost2, boolean sorted1,
+            boolean sorted2) {
+        return cheapestAlgorithm(j, card1, card2, cost1, cost2, sorted1,
+                sorted2, false);
+    }
+
+    /**
+     * @return the algorithm with the lowest estimated cost for the specified
+     *         join, given whether its inputs are already sorted on their
+     *         join fields and whether the right-hand side can be searched
+     *         through an index; or null for a join with a subquery, which
+     *         isn't costed by algorithm, so that instantiateJoin picks the
+     *         default
+     */
+    public LogicalJoinNode.Algorithm cheapestAlgorithm(LogicalJoinNode j,
+            int card1, int card2, double cost1, double cost2, boolean sorted1,
+            boolean sorted2, boolean indexed2) {
+        if (j instanceof LogicalSubplanJoinNode)
+            return null;
+        LogicalJoinNode.Algorithm best = LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP;
+        double bestCost = Double.MAX_VALUE;
+        for (LogicalJoinNode.Algorithm a : LogicalJoinNode.Algorithm.values()) {
+            double cost = estimateJoinCost(a, j, card1, card2, cost1, cost2,
+                    sorted1, sorted2, indexed2);
+            if (cost < bestCost) {
+                best = a;
+                bestCost = cost;
             }
-            return cost1 + cost1 * card2 + card1 * card2;
         }
+        return best;
+    }
+
+    /**
+     * @return the TupleDesc of the table with the specified alias. The
+     *         relation a join higher up in a plan reads is wider than its
+     *         table, so the estimates based on this are optimistic there.
+     */
+    private TupleDesc tupleDesc(String tableAlias) {
+        Integer tableId = tableAlias == null ? null : p.getTableId(tableAlias);
+        if (tableId == null)
+            return new TupleDesc(new Type[] { Type.INT_TYPE });
+        return Database.getCatalog().getTupleDesc(tableId);
     }
 
     /**
@@ -278,6 +524,9 @@ public class JoinOptimizer {
         // some code goes here
         //Replace the following
 
+        // a query over a single table has nothing to order
+        if (this.joins.isEmpty())
+            return this.joins;
         HashSet<LogicalJoinNode> joinNodeSet = new HashSet<LogicalJoinNode>(this.joins);
         for (int i = 1; i <= this.joins.size(); i++)
         {
@@ -430,14 +679,31 @@ public class JoinOptimizer {
             }
         }
 
+        // a sort-merge join needn't sort an input that is in order already
+        boolean t1sorted = isSortedOn(prevBest, j.t1Alias, j.f1PureName);
+        boolean t2sorted = j.t2Alias != null
+                && isSortedOn(prevBest, j.t2Alias, j.f2PureName);
+        // an index nested loops join searches a table that is the inner
+        // relation itself
+        boolean t1indexed = isIndexedOn(prevBest, j.t1Alias, j.f1PureName, j.p);
+        boolean t2indexed = j.t2Alias != null
+                && isIndexedOn(prevBest, j.t2Alias, j.f2PureName, j.p);
+
         // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
+        LogicalJoinNode.Algorithm algorithm1 = cheapestAlgorithm(j, t1card,
+                t2card, t1cost, t2cost, t1sorted, t2sorted, t2indexed);
+        double cost1 = estimateJoinCost(algorithm1, j, t1card, t2card, t1cost,
+                t2cost, t1sorted, t2sorted, t2indexed);
 
         LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
+        LogicalJoinNode.Algorithm algorithm2 = cheapestAlgorithm(j2, t2card,
+                t1card, t2cost, t1cost, t2sorted, t1sorted, t1indexed);
+        double cost2 = estimateJoinCost(algorithm2, j2, t2card, t1card,
+                t2cost, t1cost, t2sorted, t1sorted, t1indexed);
         if (cost2 < cost1) {
             boolean tmp;
             j = j2;
+            algorithm1 = algorithm2;
             cost1 = cost2;
             tmp = rightPkey;
             rightPkey = leftPkey;
@@ -452,10 +718,62 @@ public class JoinOptimizer {
                 rightPkey, stats);
         cc.cost = cost1;
         cc.plan = (Vector<LogicalJoinNode>) prevBest.clone();
-        cc.plan.addElement(j); // prevbest is left -- add new join to end
+        // the plan holds a copy: j itself is part of other plans too
+        cc.plan.addElement(j.withAlgorithm(algorithm1)); // prevbest is left -- add new join to end
         return cc;
     }
 
+    /**
+     * Return true if the relation a join reads to get the specified field
+     * of the specified table is in ascending order of that field. That is
+     * the output of the last join in prevBest if prevBest joins the table,
+     * and the table itself otherwise.
+     */
+    private boolean isSortedOn(Vector<LogicalJoinNode> prevBest,
+            String tableAlias, String pureField) {
+        if (doesJoin(prevBest, tableAlias)) {
+            LogicalJoinNode last = prevBest.lastElement();
+            if (last.algorithm != LogicalJoinNode.Algorithm.SORT_MERGE)
+                return false;
+            String field = tableAlias + "." + pureField;
+            boolean outerSorted = last.p != Predicate.Op.LESS_THAN
+                    && last.p != Predicate.Op.LESS_THAN_OR_EQ;
+            boolean innerSorted = last.p == Predicate.Op.EQUALS || !outerSorted;
+            return (outerSorted && field.equals(last.f1QuantifiedName))
+                    || (innerSorted && field.equals(last.f2QuantifiedName));
+        }
+        // a B+ tree file is scanned in key order
+        int tableId = p.getTableId(tableAlias);
+        DbFile f = Database.getCatalog().getDatabaseFile(tableId);
+        if (!(f instanceof BTreeFile))
+            return false;
+        try {
+            return ((BTreeFile) f).keyField() == Database.getCatalog()
+                    .getTupleDesc(tableId).fieldNameToIndex(pureField);
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return true if a join can search the specified table through its
+     * index on the specified field instead of reading it: the table must
+     * not be joined in prevBest already, and be a BTreeFile keyed on the
+     * field.
+     */
+    private boolean isIndexedOn(Vector<LogicalJoinNode> prevBest,
+            String tableAlias, String pureField, Predicate.Op op) {
+        if (doesJoin(prevBest, tableAlias))
+            return false;
+        int tableId = p.getTableId(tableAlias);
+        try {
+            return IndexNestedLoopJoin.canProbe(op, tableId, Database.getCatalog()
+                    .getTupleDesc(tableId).fieldNameToIndex(pureField));
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
     /**
      * Return true if the specified table is in the list of joins, false
      * otherwise
@@ -551,7 +869,8 @@ public class JoinOptimizer {
             // Double c = pc.getCost(pathSoFar);
             neither = true;
 
-            root = new DefaultMutableTreeNode("Join " + j + " (Cost ="
+            root = new DefaultMutableTreeNode("Join " + j
+                    + (j.algorithm == null ? "" : " " + j.algorithm) + " (Cost ="
                     + pc.getCost(pathSoFar) + ", card = "
                     + pc.getCard(pathSoFar) + ")");
             DefaultMutableTreeNode n = m.get(j.t1Alias);
@@ -0,0 +1,42 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least-recently-used replacement. Pages are kept in an access-ordered
+ * LinkedHashMap, so recording a hit just relinks one entry and the victim
+ * is always the head of the list.
+ *
+ * @Threadsafe
+ */
+public class LRUReplacementPolicy implements ReplacementPolicy {
+
+    /* the value is unused -- only the access order of the keys matters */
+    private final LinkedHashMap<PageId, Boolean> lru;
+
+    /**
+     * @param numPages the number of frames in the pool, used to size the
+     *            underlying table
+     */
+    public LRUReplacementPolicy(int numPages) {
+        this.lru = new LinkedHashMap<PageId, Boolean>(Math.max(16, numPages * 4 / 3 + 1), 0.75f, true);
+    }
+
+    public synchronized void pageAccessed(PageId pid) {
+        lru.put(pid, Boolean.TRUE);
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        lru.remove(pid);
+    }
+
+    public synchronized PageId evictionVictim() {
+        Iterator<PageId> it = lru.keySet().iterator();
+        if (!it.hasNext())
+            return null;
+        PageId victim = it.next();
+        it.remove();
+        return victim;
+    }
+}
@@ -0,0 +1,83 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Limit is an operator that implements LIMIT n: it returns the first n
+ * tuples of its child and stops reading the child after that.
+ */
+public class Limit extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private DbIterator child;
+    private int limit;
+    // the number of tuples returned since the last open or rewind
+    private int count;
+
+    /**
+     * Constructor.
+     *
+     * @param limit
+     *            the number of tuples to return.
+     * @param child
+     *            the child operator
+     */
+    public Limit(int limit, DbIterator child) {
+        if (limit < 0)
+            throw new IllegalArgumentException("negative limit " + limit);
+        this.limit = limit;
+        this.child = child;
+    }
+
+    /** @return the number of tuples this operator returns at most */
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        count = 0;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        count = 0;
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the next tuple of the child
+     * operator until limit tuples have been returned
+     *
+     * @return The next tuple, or null if there are no more tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (count < limit && child.hasNext()) {
+            count++;
+            return child.next();
+        }
+        return null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child = children[0];
+    }
+
+}
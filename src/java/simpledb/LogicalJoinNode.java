@@ -23,6 +23,25 @@ public class LogicalJoinNode {
     /** The join predicate */
     public Predicate.Op p;
 
+    /** The physical join operators the optimizer can choose from. Of two
+     * algorithms with the same cost it picks the one declared first. */
+    public enum Algorithm {
+        /** {@link Join} */
+        NESTED_LOOP,
+        /** {@link BlockNestedLoopJoin} */
+        BLOCK_NESTED_LOOP,
+        /** {@link SortMergeJoin}; all but NOT_EQUALS and LIKE joins */
+        SORT_MERGE,
+        /** {@link HashEquiJoin}; equality joins only */
+        HASH,
+        /** {@link IndexNestedLoopJoin}; all but NOT_EQUALS and LIKE joins
+         * whose inner relation is a BTreeFile keyed on the join field */
+        INDEX_NESTED_LOOP
+    }
+
+    /** The join operator chosen by the optimizer, or null if none was chosen */
+    public Algorithm algorithm;
+
     public LogicalJoinNode() {
     }
 
@@ -63,6 +82,14 @@ public class LogicalJoinNode {
         return j2;
     }
     
+    /** Return a copy of this LogicalJoinNode that is computed with the
+     * specified algorithm. */
+    public LogicalJoinNode withAlgorithm(Algorithm algorithm) {
+        LogicalJoinNode j2 = new LogicalJoinNode(t1Alias,t2Alias,f1PureName,f2PureName, p);
+        j2.algorithm = algorithm;
+        return j2;
+    }
+
     @Override public boolean equals(Object o) {
         LogicalJoinNode j2 =(LogicalJoinNode)o;
         return (j2.t1Alias.equals(t1Alias)  || j2.t1Alias.equals(t2Alias)) && (j2.t2Alias.equals(t1Alias)  || j2.t2Alias.equals(t2Alias));
@@ -33,8 +33,10 @@ public class LogicalPlan {
     private boolean hasAgg = false;
     private String aggOp;
     private String aggField;
-    private boolean oByAsc, hasOrderBy = false;
-    private String oByField;
+    private Vector<String> oByFields = new Vector<String>();
+    private Vector<Boolean> oByAscs = new Vector<Boolean>();
+    private int limit = -1;
+    private int parallelism = 1;
     private String query;
 //    private Query owner;
 
@@ -203,17 +205,48 @@ public class LogicalPlan {
         hasAgg = true;
     }
 
-    /** Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
-        a single ORDER BY field.
+    /** Add an ORDER BY expression in the specified order on the specified field.  The
+        result is sorted on the fields in the order they were added: on the second field
+        among tuples with the same first field, and so on.
         @param field the field to order by
         @param asc true if should be ordered in ascending order, false for descending order
      * @throws ParsingException 
     */
     public void addOrderBy(String field, boolean asc) throws ParsingException {
         field=disambiguateName(field);
-        oByField = field;
-        oByAsc = asc;
-        hasOrderBy = true;
+        oByFields.addElement(field);
+        oByAscs.addElement(asc);
+    }
+
+    /** Limit the result of the query to the specified number of tuples, as in a LIMIT clause.
+        @param limit the number of tuples to return at most
+        @throws ParsingException if limit is negative
+    */
+    public void setLimit(int limit) throws ParsingException {
+        if (limit < 0)
+            throw new ParsingException("LIMIT must not be negative");
+        this.limit = limit;
+    }
+
+    /** @return the number of tuples the query returns at most, or -1 if it has no LIMIT */
+    public int getLimit() {
+        return limit;
+    }
+
+    /** Run the scans of large heap files, hash joins and aggregates of the plan on the
+        specified number of threads, with {@link Exchange} operators between them and their
+        inputs, or as a {@link ParallelAggregate}.
+        @param parallelism the number of threads; 1 to run the whole plan on the calling thread
+    */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /** @return the number of threads the scans, hash joins and aggregates run on */
+    public int getParallelism() {
+        return parallelism;
     }
 
     /** Given a name of a field, try to figure out what table it belongs to by looking
@@ -271,6 +304,58 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /** @return a join of plan1 and plan2 on p by parallelism HashEquiJoins, each of which
+     *    joins the tuples of one partition of the join field values
+     */
+    private DbIterator parallelHashJoin(JoinPredicate p, DbIterator plan1, DbIterator plan2) {
+        Repartition[] outer = Repartition.partitions(producers(plan1),
+                p.getField1(), parallelism);
+        Repartition[] inner = Repartition.partitions(producers(plan2),
+                p.getField2(), parallelism);
+        DbIterator[] joins = new DbIterator[parallelism];
+        for (int i = 0; i < parallelism; i++)
+            joins[i] = new HashEquiJoin(p, outer[i], inner[i]);
+        return new Gather(joins);
+    }
+
+    /** @return an aggregate of node by parallelism Aggregates, each of which
+     *    aggregates the groups of one partition of the group values
+     */
+    private Operator parallelAggregate(DbIterator node, int afield, int gfield,
+            Aggregator.Op aop) {
+        Repartition[] partitions = Repartition.partitions(producers(node),
+                gfield, parallelism);
+        DbIterator[] aggregates = new DbIterator[parallelism];
+        for (int i = 0; i < parallelism; i++)
+            aggregates[i] = new Aggregate(partitions[i], afield, gfield, aop);
+        return new Gather(aggregates);
+    }
+
+    /** @return the producers of an exchange over the tuples of plan: scans of
+     *    ranges of its pages if it scans a large enough heap file, or plan itself
+     */
+    private DbIterator[] producers(DbIterator plan) {
+        int workers = parallelWorkers(plan, parallelism);
+        if (workers > 1)
+            return ParallelSeqScan.split((SeqScan) plan, workers);
+        return new DbIterator[] { plan };
+    }
+
+    /** @return the number of workers, up to maxWorkers, to split the pages
+     *    read by node between, as in a {@link ParallelAggregate} or a
+     *    {@link ParallelSeqScan}: 1 unless node scans a heap file that has
+     *    enough pages for more than one worker
+     */
+    static int parallelWorkers(DbIterator node, int maxWorkers) {
+        if (!(node instanceof SeqScan) || ((SeqScan) node).hasPageRange())
+            return 1;
+        DbFile f = Database.getCatalog().getDatabaseFile(((SeqScan) node).getTableId());
+        if (!(f instanceof HeapFile))
+            return 1;
+        int workers = f.numPages() / ParallelAggregate.MIN_PAGES_PER_WORKER;
+        return Math.max(1, Math.min(maxWorkers, workers));
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -334,7 +419,11 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            // evaluate the filter inside the scan when the table is scanned directly
+            if (subplan instanceof SeqScan)
+                ((SeqScan) subplan).addPredicate(p);
+            else
+                subplanMap.put(lf.tableAlias, new Filter(p, subplan));
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
@@ -383,6 +472,8 @@ public class LogicalPlan {
             
             DbIterator j;
             j = jo.instantiateJoin(lj,plan1,plan2);
+            if (parallelism > 1 && j instanceof HashEquiJoin)
+                j = parallelHashJoin(((HashEquiJoin) j).getJoinPredicate(), plan1, plan2);
             subplanMap.put(t1name, j);
 
             if (!isSubqueryJoin) {
@@ -458,14 +549,28 @@ public class LogicalPlan {
                 }
         }
 
+        // the pages of a large heap file are scanned by several threads
+        if (!hasAgg && parallelism > 1 && parallelWorkers(node, parallelism) > 1)
+            node = new ParallelSeqScan((SeqScan) node, parallelWorkers(node, parallelism));
+
         if (hasAgg) {
             TupleDesc td = node.getTupleDesc();
-            Aggregate aggNode;
+            Operator aggNode;
             try {
-                aggNode = new Aggregate(node,
-                                        td.fieldNameToIndex(aggField),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField),
-                                getAggOp(aggOp));
+                int afield = td.fieldNameToIndex(aggField);
+                int gfield = groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField);
+                int workers = parallelism > 1 ? parallelWorkers(node, parallelism) : 1;
+                // the groups of tuples sorted on the group by field can be
+                // aggregated one at a time
+                if (gfield != Aggregator.NO_GROUPING && JoinOptimizer.isSortedOn(node, gfield))
+                    aggNode = new StreamingAggregate(node, afield, gfield, getAggOp(aggOp));
+                else if (workers > 1)
+                    aggNode = new ParallelAggregate((SeqScan) node, afield, gfield,
+                            getAggOp(aggOp), workers);
+                else if (parallelism > 1 && gfield != Aggregator.NO_GROUPING)
+                    aggNode = parallelAggregate(node, afield, gfield, getAggOp(aggOp));
+                else
+                    aggNode = new Aggregate(node, afield, gfield, getAggOp(aggOp));
             } catch (NoSuchElementException e) {
                 throw new simpledb.ParsingException(e);
             } catch (IllegalArgumentException e) {
@@ -474,9 +579,27 @@ public class LogicalPlan {
             node = aggNode;
         }
 
-        if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+        if (!oByFields.isEmpty()) {
+            int[] oByIndexes = new int[oByFields.size()];
+            boolean[] oByAsc = new boolean[oByFields.size()];
+            for (int i = 0; i < oByIndexes.length; i++) {
+                oByIndexes[i] = node.getTupleDesc().fieldNameToIndex(oByFields.elementAt(i));
+                oByAsc[i] = oByAscs.elementAt(i);
+            }
+            // the joins may have sorted the tuples on a single field already
+            if (oByIndexes.length > 1 || !oByAsc[0]
+                    || !JoinOptimizer.isSortedOn(node, oByIndexes[0])) {
+                // only the first tuples need to be kept for a LIMIT
+                if (limit >= 0)
+                    node = new TopN(oByIndexes, oByAsc, limit, node);
+                else
+                    node = new OrderBy(oByIndexes, oByAsc, node);
+            }
         }
+        // the projection neither drops nor adds tuples, so the limit can
+        // be applied below it
+        if (limit >= 0 && !(node instanceof TopN))
+            node = new Limit(limit, node);
 
         return new Project(outFields, outTypes, node);
     }
@@ -1,23 +1,44 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * OrderBy is an operator that implements a relational ORDER BY.
+ * <p>
+ * OrderBy is an external merge sort: the child tuples are read in runs of
+ * as many tuples as fit in its memory budget, and each run is sorted and
+ * written to a spill file once it is full. The runs are merged MERGE_FANIN
+ * at a time until at most MERGE_FANIN are left, which are then merged as
+ * the sorted tuples are read. Child relations that fit in the memory budget
+ * are sorted in memory.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** Number of pages of tuples sorted in memory by default. */
+    public static final int DEFAULT_MEMORY_PAGES = 64;
+    /** Number of sorted runs merged at a time. */
+    public static final int MERGE_FANIN = 16;
+
     private DbIterator child;
     private TupleDesc td;
     private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
-    private int orderByField;
-    private String orderByFieldName;
+    private int[] orderByFields;
     private Iterator<Tuple> it;
-    private boolean asc;
+    private boolean[] asc;
+    private final int memoryBudget;
+    private TupleComparator comparator;
+
+    // the sorted runs in spill files, empty if the child tuples are all in
+    // childTups, and the runs being merged, ordered by their next tuple
+    private ArrayList<SpillFile> runs = new ArrayList<SpillFile>();
+    private PriorityQueue<Run> merge;
 
     /**
-     * Creates a new OrderBy node over the tuples from the iterator.
+     * Creates a new OrderBy node over the tuples from the iterator. Sorts
+     * DEFAULT_MEMORY_PAGES pages worth of tuples at a time in memory.
      * 
      * @param orderbyField
      *            the field to which the sort is applied.
@@ -27,26 +48,99 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, DbIterator child) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, child);
+    }
+
+    /**
+     * Creates a new OrderBy node over the tuples from the iterator.
+     * 
+     * @param orderbyField
+     *            the field to which the sort is applied.
+     * @param asc
+     *            true if the sort order is ascending.
+     * @param child
+     *            the tuples to sort.
+     * @param memoryBudget
+     *            the number of bytes of tuples to sort in memory at a time;
+     *            at least one tuple is held whatever the budget
+     */
+    public OrderBy(int orderbyField, boolean asc, DbIterator child, int memoryBudget) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, child, memoryBudget);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts the tuples from the iterator on
+     * several fields: on the first one, then on the second one among tuples
+     * with the same first field, and so on. Sorts DEFAULT_MEMORY_PAGES pages
+     * worth of tuples at a time in memory.
+     * 
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if the sort order is ascending.
+     * @param child
+     *            the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child) {
+        this(orderbyFields, asc, child, DEFAULT_MEMORY_PAGES * BufferPool.getPageSize());
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts the tuples from the iterator on
+     * several fields.
+     * 
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if the sort order is ascending.
+     * @param child
+     *            the tuples to sort.
+     * @param memoryBudget
+     *            the number of bytes of tuples to sort in memory at a time;
+     *            at least one tuple is held whatever the budget
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child,
+            int memoryBudget) {
         this.child = child;
         td = child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.orderByFieldName = td.getFieldName(orderbyField);
-        this.asc = asc;
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.memoryBudget = memoryBudget;
+        this.comparator = new TupleComparator(td, orderbyFields, asc);
     }
     
+    /** @return true if the sort order of the first sort field is ascending */
     public boolean isASC()
     {
-	return this.asc;
+	return this.asc[0];
     }
     
+    /** @return the first sort field */
     public int getOrderByField()
     {
-        return this.orderByField;
+        return this.orderByFields[0];
     }
     
     public String getOrderFieldName()
     {
-	return this.orderByFieldName;
+	return td.getFieldName(this.orderByFields[0]);
+    }
+
+    /** @return the fields to which the sort is applied, most significant first */
+    public int[] getOrderByFields() {
+        return this.orderByFields.clone();
+    }
+
+    /** @return for each sort field, true if its sort order is ascending */
+    public boolean[] getAscending() {
+        return this.asc.clone();
+    }
+
+    /** @return the number of bytes of tuples sorted in memory at a time */
+    public int getMemoryBudget() {
+        return this.memoryBudget;
     }
     
     public TupleDesc getTupleDesc() {
@@ -56,21 +150,135 @@ public class OrderBy extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        childTups.clear();
+        closeRuns();
+        int runTuples = Math.max(1, memoryBudget / td.getSize());
+        try {
+            while (child.hasNext()) {
+                if (childTups.size() == runTuples)
+                    spillRun();
+                childTups.add(child.next());
+            }
+            if (!runs.isEmpty()) {
+                spillRun();
+                while (runs.size() > MERGE_FANIN)
+                    mergeRuns();
+            }
+        } catch (IOException e) {
+            closeRuns();
+            throw new DbException("unable to spill sorted runs: " + e);
+        }
+        if (runs.isEmpty()) {
+            Collections.sort(childTups, comparator);
+            it = childTups.iterator();
+        } else {
+            merge = startMerge(runs);
+        }
         super.open();
     }
 
+    /** Sorts the tuples in childTups and moves them to a new run. */
+    private void spillRun() throws IOException {
+        Collections.sort(childTups, comparator);
+        SpillFile run = new SpillFile(td);
+        for (Tuple t : childTups)
+            run.add(t);
+        runs.add(run);
+        childTups.clear();
+    }
+
+    /** Replaces the first MERGE_FANIN runs with a run of their merge. */
+    private void mergeRuns() throws IOException, DbException,
+            TransactionAbortedException {
+        List<SpillFile> merged = new ArrayList<SpillFile>(runs.subList(0, MERGE_FANIN));
+        runs.subList(0, MERGE_FANIN).clear();
+        SpillFile run = new SpillFile(td);
+        PriorityQueue<Run> heap = startMerge(merged);
+        Tuple t;
+        while ((t = nextMerged(heap)) != null)
+            run.add(t);
+        for (SpillFile f : merged)
+            f.close();
+        runs.add(run);
+    }
+
+    /** A sorted run being merged, and its next tuple. */
+    private static class Run {
+        final DbIterator it;
+        Tuple next;
+
+        Run(DbIterator it) {
+            this.it = it;
+        }
+    }
+
+    /** @return the open runs of the specified files, ordered by their first tuple */
+    private PriorityQueue<Run> startMerge(List<SpillFile> files)
+            throws DbException, TransactionAbortedException {
+        PriorityQueue<Run> heap = new PriorityQueue<Run>(Math.max(1, files.size()),
+                new Comparator<Run>() {
+                    public int compare(Run r1, Run r2) {
+                        return comparator.compare(r1.next, r2.next);
+                    }
+                });
+        for (SpillFile f : files) {
+            Run r = new Run(f.iterator());
+            r.it.open();
+            if (r.it.hasNext()) {
+                r.next = r.it.next();
+                heap.add(r);
+            } else {
+                r.it.close();
+            }
+        }
+        return heap;
+    }
+
+    /** @return the least next tuple of the runs in heap, or null if there is none */
+    private static Tuple nextMerged(PriorityQueue<Run> heap)
+            throws DbException, TransactionAbortedException {
+        Run r = heap.poll();
+        if (r == null)
+            return null;
+        Tuple t = r.next;
+        if (r.it.hasNext()) {
+            r.next = r.it.next();
+            heap.add(r);
+        } else {
+            r.it.close();
+        }
+        return t;
+    }
+
+    private void closeMerge() {
+        if (merge != null) {
+            for (Run r : merge)
+                r.it.close();
+            merge = null;
+        }
+    }
+
+    private void closeRuns() {
+        closeMerge();
+        for (SpillFile f : runs)
+            f.close();
+        runs.clear();
+    }
+
     public void close() {
         super.close();
         it = null;
+        closeRuns();
+        child.close();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        if (runs.isEmpty()) {
+            it = childTups.iterator();
+        } else {
+            closeMerge();
+            merge = startMerge(runs);
+        }
     }
 
     /**
@@ -82,6 +290,8 @@ public class OrderBy extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
+        if (merge != null)
+            return nextMerged(merge);
         if (it != null && it.hasNext()) {
             return it.next();
         } else
@@ -100,24 +310,56 @@ public class OrderBy extends Operator {
 
 }
 
+/**
+ * Compares tuples on one or more of their fields. The type of every field
+ * is looked up once, when the comparator is made for a TupleDesc, so that
+ * int fields are compared as ints and string fields as Strings without
+ * going through Field.compare.
+ */
 class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
+    private final int[] fields;
+    // for each field, 1 if ascending and -1 if descending
+    private final int[] signs;
+    private final boolean[] isInt;
+
+    /**
+     * @param td
+     *            the TupleDesc of the tuples to compare
+     * @param fields
+     *            the fields to compare, most significant first
+     * @param asc
+     *            for each field, true if the order is ascending
+     */
+    public TupleComparator(TupleDesc td, int[] fields, boolean[] asc) {
+        if (fields.length == 0 || fields.length != asc.length)
+            throw new IllegalArgumentException(
+                    "need one sort order for each of one or more fields");
+        this.fields = fields.clone();
+        this.signs = new int[fields.length];
+        this.isInt = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            signs[i] = asc[i] ? 1 : -1;
+            isInt[i] = td.getFieldType(fields[i]) == Type.INT_TYPE;
+        }
+    }
 
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
+    public TupleComparator(TupleDesc td, int field, boolean asc) {
+        this(td, new int[] { field }, new boolean[] { asc });
     }
 
     public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
+        for (int i = 0; i < fields.length; i++) {
+            int c;
+            if (isInt[i])
+                c = Integer.compare(((IntField) o1.getField(fields[i])).getValue(),
+                        ((IntField) o2.getField(fields[i])).getValue());
+            else
+                c = ((StringField) o1.getField(fields[i])).getValue().compareTo(
+                        ((StringField) o2.getField(fields[i])).getValue());
+            if (c != 0)
+                return signs[i] * c;
+        }
+        return 0;
     }
     
 }
@@ -0,0 +1,282 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ParallelAggregate computes the same aggregate as {@link Aggregate} over
+ * the tuples of a scan of a heap file, in two phases.
+ * <p>
+ * The pages of the file are split into one disjoint range for each worker,
+ * and every worker thread aggregates the tuples of its range into an
+ * aggregator of its own. The partial aggregators of int fields are then
+ * merged with {@link IntegerAggregator#merge}, which keeps their running
+ * values as longs, so a partial SUM may overflow an int as long as the total
+ * doesn't. The partial COUNTs of string fields are merged by a SUM.
+ * <p>
+ * Workers are never interrupted, since an interrupt closes the file channel
+ * of the table they read; once one fails, the others stop at their next
+ * tuple.
+ */
+public class ParallelAggregate extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of worker threads used by default. */
+    public static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Number of pages a worker should scan at least for the parallel
+     * aggregate to be worth starting.
+     */
+    public static final int MIN_PAGES_PER_WORKER = 16;
+
+    private static final ExecutorService workerPool =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ParallelAggregate worker");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private SeqScan child;
+    private int afield, gfield;
+    private Aggregator.Op aggreOp;
+    private final int workers;
+    private TupleDesc td;
+    private DbIterator iterator;
+    // set to make the workers of the current open() stop early
+    private volatile boolean cancelled;
+
+    /**
+     * Constructor.
+     *
+     * @param child
+     *            The scan of the heap file whose tuples are aggregated,
+     *            including the predicates pushed down into it.
+     * @param afield
+     *            The column over which we are computing an aggregate.
+     * @param gfield
+     *            The column over which we are grouping the result, or -1 if
+     *            there is no grouping
+     * @param aop
+     *            The aggregation operator to use
+     * @param workers
+     *            The number of worker threads to split the scan between
+     * @throws IllegalArgumentException if the scanned table isn't a HeapFile
+     */
+    public ParallelAggregate(SeqScan child, int afield, int gfield, Aggregator.Op aop,
+            int workers) {
+        if (workers < 1)
+            throw new IllegalArgumentException("need at least one worker, not " + workers);
+        if (!(Database.getCatalog().getDatabaseFile(child.getTableId()) instanceof HeapFile))
+            throw new IllegalArgumentException("only heap files can be scanned in parallel");
+        this.child = child;
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aggreOp = aop;
+        this.workers = workers;
+        // fails now if the operator can't be computed
+        newPartialAggregator();
+        this.td = Aggregate.resultTupleDesc(child.getTupleDesc(), afield, gfield, aop);
+    }
+
+    /**
+     * Constructor for an aggregate with {@link #DEFAULT_WORKERS} workers.
+     */
+    public ParallelAggregate(SeqScan child, int afield, int gfield, Aggregator.Op aop) {
+        this(child, afield, gfield, aop, DEFAULT_WORKERS);
+    }
+
+    /**
+     * @return the aggregator of the tuples of a single worker, which is also
+     *         the one the partial aggregators of int fields are merged into
+     */
+    private Aggregator newPartialAggregator() {
+        Type gbFieldType = gfield == Aggregator.NO_GROUPING ? null
+                : child.getTupleDesc().getFieldType(gfield);
+        if (child.getTupleDesc().getFieldType(afield).equals(Type.INT_TYPE))
+            return new IntegerAggregator(gfield, gbFieldType, afield, aggreOp);
+        else
+            return new StringAggregator(gfield, gbFieldType, afield, aggreOp);
+    }
+
+    /**
+     * @return the aggregator that sums the partial COUNTs of a string
+     *         field, which are never larger than the total
+     */
+    private Aggregator newCountSumAggregator() {
+        // the partial results are the group value, if any, then the count
+        if (gfield == Aggregator.NO_GROUPING)
+            return new IntegerAggregator(Aggregator.NO_GROUPING, null, 0, Aggregator.Op.SUM);
+        return new IntegerAggregator(0, child.getTupleDesc().getFieldType(gfield), 1,
+                Aggregator.Op.SUM);
+    }
+
+    /**
+     * @return the groupby field index in the <b>INPUT</b> tuples, or
+     *         {@link simpledb.Aggregator#NO_GROUPING}
+     */
+    public int groupField() {
+        return gfield;
+    }
+
+    /**
+     * @return the name of the groupby field in the <b>OUTPUT</b> tuples, or
+     *         null if there is no grouping
+     */
+    public String groupFieldName() {
+        return gfield == Aggregator.NO_GROUPING ? null : td.getFieldName(0);
+    }
+
+    /** @return the aggregate field */
+    public int aggregateField() {
+        return afield;
+    }
+
+    /** @return the name of the aggregate field in the <b>INPUT</b> tuples */
+    public String aggregateFieldName() {
+        return child.getTupleDesc().getFieldName(afield);
+    }
+
+    /** @return the aggregate operator */
+    public Aggregator.Op aggregateOp() {
+        return aggreOp;
+    }
+
+    /** @return the number of worker threads the scan is split between */
+    public int getWorkers() {
+        return workers;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws NoSuchElementException, DbException,
+            TransactionAbortedException {
+        final HeapFile f = (HeapFile) Database.getCatalog().getDatabaseFile(child.getTableId());
+        final TransactionId tid = child.getTransactionId();
+        final List<Predicate> predicates = child.getPredicates();
+        int numPages = f.numPages();
+        int n = Math.max(1, Math.min(workers, numPages));
+
+        cancelled = false;
+        List<Future<Aggregator>> partials = new ArrayList<Future<Aggregator>>(n);
+        for (int i = 0; i < n; i++) {
+            final int startPage = (int) ((long) numPages * i / n);
+            final int endPage = (int) ((long) numPages * (i + 1) / n);
+            partials.add(workerPool.submit(new Callable<Aggregator>() {
+                public Aggregator call() throws Exception {
+                    Aggregator partial = newPartialAggregator();
+                    DbFileIterator it = f.iterator(tid, startPage, endPage, predicates);
+                    it.open();
+                    try {
+                        while (!cancelled && it.hasNext())
+                            partial.mergeTupleIntoGroup(it.next());
+                    } finally {
+                        it.close();
+                    }
+                    return partial;
+                }
+            }));
+        }
+
+        Aggregator aggregator = null;
+        try {
+            for (Future<Aggregator> future : partials) {
+                Aggregator partial = future.get();
+                if (partial instanceof IntegerAggregator) {
+                    if (aggregator == null)
+                        aggregator = partial;
+                    else
+                        ((IntegerAggregator) aggregator).merge((IntegerAggregator) partial);
+                } else {
+                    if (aggregator == null)
+                        aggregator = newCountSumAggregator();
+                    DbIterator it = partial.iterator();
+                    it.open();
+                    while (it.hasNext())
+                        aggregator.mergeTupleIntoGroup(it.next());
+                    it.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel(partials);
+            Thread.currentThread().interrupt();
+            throw new DbException("interrupted while aggregating in parallel");
+        } catch (ExecutionException e) {
+            cancel(partials);
+            Throwable cause = e.getCause();
+            if (cause instanceof DbException)
+                throw (DbException) cause;
+            if (cause instanceof TransactionAbortedException)
+                throw (TransactionAbortedException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new DbException("parallel aggregate worker failed: " + cause);
+        }
+        iterator = Aggregate.results(aggregator);
+        super.open();
+    }
+
+    /**
+     * Makes the workers stop at their next tuple and waits for them to
+     * finish, without interrupting them.
+     */
+    private void cancel(List<Future<Aggregator>> partials) {
+        cancelled = true;
+        boolean interrupted = false;
+        for (Future<Aggregator> partial : partials) {
+            while (true) {
+                try {
+                    partial.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    public void close() {
+        super.close();
+        if (iterator != null)
+            iterator.close();
+        iterator = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        iterator.rewind();
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the next merged result
+     * tuple, laid out as those of {@link Aggregate}.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (iterator.hasNext())
+            return iterator.next();
+        return null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child = (SeqScan) children[0];
+    }
+
+}
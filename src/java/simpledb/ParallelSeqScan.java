@@ -0,0 +1,63 @@
+package simpledb;
+
+/**
+ * ParallelSeqScan is a sequential scan of a heap file whose pages are
+ * split into one disjoint range for each worker. Every range is read by a
+ * {@link SeqScan} of its own on a worker thread, and the tuples are
+ * returned in the order they arrive, as by a {@link Gather}. B+ tree files
+ * are not supported, since each range of them reads all the leaf pages.
+ */
+public class ParallelSeqScan extends Exchange {
+
+    private static final long serialVersionUID = 1L;
+    private final String alias;
+
+    /**
+     * Constructor.
+     *
+     * @param scan
+     *            the scan to split, including the predicates pushed down
+     *            into it
+     * @param workers
+     *            the number of ranges the pages are split into; at most one
+     *            for each page of the table
+     * @throws IllegalArgumentException if the scanned table isn't a HeapFile
+     */
+    public ParallelSeqScan(SeqScan scan, int workers) {
+        super(new Producers(split(scan, workers), -1, 1), 0);
+        this.alias = scan.getAlias();
+    }
+
+    /**
+     * @return scans of disjoint ranges of the pages of the table that scan
+     *         reads, with the same predicates, that together read all of
+     *         them; the last range extends to pages added after this call
+     * @throws IllegalArgumentException if the scanned table isn't a HeapFile
+     */
+    static SeqScan[] split(SeqScan scan, int workers) {
+        if (workers < 1)
+            throw new IllegalArgumentException("need at least one worker, not " + workers);
+        if (scan.hasPageRange())
+            throw new IllegalArgumentException("scan already reads a range of pages");
+        DbFile f = Database.getCatalog().getDatabaseFile(scan.getTableId());
+        if (!(f instanceof HeapFile))
+            throw new IllegalArgumentException("only heap files can be scanned in parallel");
+        int numPages = f.numPages();
+        int n = Math.max(1, Math.min(workers, numPages));
+        SeqScan[] ranges = new SeqScan[n];
+        for (int i = 0; i < n; i++) {
+            ranges[i] = new SeqScan(scan.getTransactionId(), scan.getTableId(), scan.getAlias());
+            for (Predicate p : scan.getPredicates())
+                ranges[i].addPredicate(p);
+            int startPage = (int) ((long) numPages * i / n);
+            int endPage = i == n - 1 ? Integer.MAX_VALUE : (int) ((long) numPages * (i + 1) / n);
+            ranges[i].setPageRange(startPage, endPage);
+        }
+        return ranges;
+    }
+
+    public String getName() {
+        return "scan(" + alias + ")x" + getChildren().length;
+    }
+
+}
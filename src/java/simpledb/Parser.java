@@ -4,6 +4,8 @@ import Zql.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -11,6 +13,8 @@ import jline.SimpleCompletor;
 
 public class Parser {
     static boolean explain = false;
+    // the number of threads the hash joins and grouped aggregates run on
+    static int parallelism = 1;
 
     public static Predicate.Op getOp(String s) throws simpledb.ParsingException {
         if (s.equals("="))
@@ -253,18 +257,15 @@ public class Parser {
         if (q.getOrderBy() != null) {
             @SuppressWarnings("unchecked")
             Vector<ZOrderBy> obys = q.getOrderBy();
-            if (obys.size() > 1) {
-                throw new simpledb.ParsingException(
-                        "Multi-attribute ORDER BY is not supported.");
-            }
-            ZOrderBy oby = obys.elementAt(0);
-            if (!(oby.getExpression() instanceof ZConstant)) {
-                throw new simpledb.ParsingException(
-                        "Complex ORDER BY's are not supported");
-            }
-            ZConstant f = (ZConstant) oby.getExpression();
+            for (ZOrderBy oby : obys) {
+                if (!(oby.getExpression() instanceof ZConstant)) {
+                    throw new simpledb.ParsingException(
+                            "Complex ORDER BY's are not supported");
+                }
+                ZConstant f = (ZConstant) oby.getExpression();
 
-            lp.addOrderBy(f.getValue(), oby.getAscOrder());
+                lp.addOrderBy(f.getValue(), oby.getAscOrder());
+            }
 
         }
         return lp;
@@ -273,12 +274,82 @@ public class Parser {
     private Transaction curtrans = null;
     private boolean inUserTrans = false;
 
+    // Zql has no LIMIT clause: a LIMIT at the end of a statement is taken
+    // off before Zql parses it, and set on the logical plan of the query,
+    // or of the subquery of an INSERT
+    private static final Pattern LIMIT_CLAUSE = Pattern.compile(
+            "\\s+limit\\s+(\\d+)\\s*(;?)\\s*$", Pattern.CASE_INSENSITIVE);
+    // the LIMIT of the statement being processed, or -1 if it has none
+    private int limit = -1;
+
+    /**
+     * Takes a LIMIT clause off the end of the specified statement and
+     * records it as the LIMIT of the statement being processed.
+     *
+     * @return the statement without its LIMIT clause
+     */
+    private String stripLimit(String s) throws simpledb.ParsingException {
+        limit = -1;
+        Matcher m = LIMIT_CLAUSE.matcher(s);
+        if (!m.find())
+            return s;
+        try {
+            limit = Integer.parseInt(m.group(1));
+        } catch (NumberFormatException e) {
+            throw new simpledb.ParsingException("LIMIT " + m.group(1)
+                    + " is too large");
+        }
+        return s.substring(0, m.start()) + m.group(2);
+    }
+
+    /**
+     * @return the first statement of the specified text, up to and
+     *         including the first ';' outside of a quoted string, or the
+     *         whole text if there is none
+     */
+    private static String firstStatement(String s) {
+        char quote = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == ';') {
+                return s.substring(0, i + 1);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Throws a ParsingException if the statement being processed had a
+     * LIMIT, for the statements that can't apply one.
+     */
+    private void rejectLimit(String statement) throws simpledb.ParsingException {
+        if (limit >= 0) {
+            limit = -1;
+            throw new simpledb.ParsingException(statement
+                    + " statements don't support LIMIT");
+        }
+    }
+
+    /** Sets the LIMIT taken off the statement being processed on its plan. */
+    private void applyLimit(LogicalPlan lp) throws simpledb.ParsingException {
+        if (limit >= 0)
+            lp.setLimit(limit);
+        limit = -1;
+    }
+
     public Query handleQueryStatement(ZQuery s, TransactionId tId)
             throws TransactionAbortedException, DbException, IOException,
             simpledb.ParsingException, Zql.ParseException {
         Query query = new Query(tId);
 
         LogicalPlan lp = parseQueryLogicalPlan(tId, s);
+        applyLimit(lp);
+        lp.setParallelism(parallelism);
         DbIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
@@ -380,6 +451,7 @@ public class Parser {
 
                 i++;
             }
+            rejectLimit("INSERT ... VALUES");
             ArrayList<Tuple> tups = new ArrayList<Tuple>();
             tups.add(t);
             newTups = new TupleArrayIterator(tups);
@@ -387,6 +459,7 @@ public class Parser {
         } else {
             ZQuery zq = (ZQuery) s.getQuery();
             LogicalPlan lp = parseQueryLogicalPlan(tId, zq);
+            applyLimit(lp);
             newTups = lp.physicalPlan(tId, TableStats.getStatsMap(), explain);
         }
         Query insertQ = new Query(tId);
@@ -408,6 +481,7 @@ public class Parser {
             throw new simpledb.ParsingException("Unknown table : "
                     + s.getTable());
         }
+        rejectLimit("DELETE");
         String name = s.getTable();
         Query sdbq = new Query(tid);
 
@@ -465,12 +539,14 @@ public class Parser {
 
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException {
+        s = stripLimit(s);
         ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
             if (stmt instanceof ZQuery) {
                 LogicalPlan lp = parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                applyLimit(lp);
                 return lp;
             }
         } catch (Zql.ParseException e) {
@@ -503,6 +579,14 @@ public class Parser {
 
     public void processNextStatement(InputStream is) {
         try {
+            ByteArrayOutputStream statement = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = is.read(buf)) > 0)
+                statement.write(buf, 0, n);
+            // only the first statement is processed; a LIMIT ends it
+            is = new ByteArrayInputStream(stripLimit(firstStatement(
+                    statement.toString("UTF-8"))).getBytes("UTF-8"));
             ZqlParser p = new ZqlParser(is);
             ZStatement s = p.readStatement();
 
@@ -595,7 +679,7 @@ public class Parser {
         p.start(argv);
     }
 
-    static final String usage = "Usage: parser catalogFile [-explain] [-f queryFile]";
+    static final String usage = "Usage: parser catalogFile [-explain] [-parallel threads] [-f queryFile]";
     static final int SLEEP_TIME = 5000;
 
     protected void shutdown() {
@@ -616,6 +700,16 @@ public class Parser {
                 if (argv[i].equals("-explain")) {
                     explain = true;
                     System.out.println("Explain mode enabled.");
+                } else if (argv[i].equals("-parallel")) {
+                    try {
+                        parallelism = Math.max(1, Integer.parseInt(argv[++i]));
+                    } catch (RuntimeException e) {
+                        System.out.println("Expected number of threads after -parallel\n"
+                                + usage);
+                        System.exit(0);
+                    }
+                    System.out.println("Running joins and aggregates on "
+                            + parallelism + " threads.");
                 } else if (argv[i].equals("-f")) {
                     interactive = false;
                     if (i++ == argv.length) {
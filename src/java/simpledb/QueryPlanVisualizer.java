@@ -9,12 +9,18 @@ public class QueryPlanVisualizer {
 
     static final String JOIN = "⨝";
     static final String HASH_JOIN = "⨝(hash)";
+    static final String BNL_JOIN = "⨝(bnl)";
+    static final String MERGE_JOIN = "⨝(merge)";
+    static final String INDEX_JOIN = "⨝(index)";
     static final String SELECT = "σ";
     static final String PROJECT = "π";
     static final String RENAME = "ρ";
     static final String SCAN = "scan";
     static final String ORDERBY = "o";
+    static final String LIMIT = "limit";
     static final String GROUPBY = "g";
+    static final String SORTED_GROUPBY = "g(sorted)";
+    static final String PARALLEL_GROUPBY = "g(parallel:%d)";
     static final String SPACE = "  ";
 
     private int calculateQueryPlanTreeDepth(DbIterator root) {
@@ -26,7 +32,7 @@ public class QueryPlanVisualizer {
         Operator o = (Operator) root;
         DbIterator[] children = o.getChildren();
 
-        if (o instanceof Join || o instanceof HashEquiJoin) {
+        if (JoinOptimizer.getJoinPredicate(o) != null) {
             int d1 = this.calculateQueryPlanTreeDepth(children[0]);
             int d2 = this.calculateQueryPlanTreeDepth(children[1]);
             return Math.max(d1, d2) + 3;
@@ -39,6 +45,19 @@ public class QueryPlanVisualizer {
         return 2;
     }
 
+    /** @return the symbol of the specified join operator */
+    private static String joinLabel(Operator o) {
+        if (o instanceof HashEquiJoin)
+            return HASH_JOIN;
+        if (o instanceof BlockNestedLoopJoin)
+            return BNL_JOIN;
+        if (o instanceof SortMergeJoin)
+            return MERGE_JOIN;
+        if (o instanceof IndexNestedLoopJoin)
+            return INDEX_JOIN;
+        return JOIN;
+    }
+
     private static class SubTreeDescriptor {
         int width;
         int upBarPosition;
@@ -74,8 +93,18 @@ public class QueryPlanVisualizer {
                 alias = " " + alias;
             else
                 alias = "";
+            // show the predicates pushed down into the scan
+            String predicates = "";
+            TupleDesc td = s.getTupleDesc();
+            for (Predicate p : s.getPredicates()) {
+                predicates += predicates.isEmpty() ? "," + SELECT + "(" : " AND ";
+                predicates += td.getFieldName(p.getField()) + p.getOp()
+                        + p.getOperand();
+            }
+            if (!predicates.isEmpty())
+                predicates += ")";
             thisNode.text = String
-                    .format("%1$s(%2$s)", SCAN, tableName + alias);
+                    .format("%1$s(%2$s)", SCAN, tableName + alias + predicates);
             if (SCAN.length() / 2 < parentUpperBarStartShift) {
                 thisNode.upBarPosition = currentStartPosition
                         + parentUpperBarStartShift;
@@ -107,18 +136,18 @@ public class QueryPlanVisualizer {
             Operator plan = (Operator) queryPlan;
             DbIterator[] children = plan.getChildren();
 
-            if (plan instanceof Join) {
-                Join j = (Join) plan;
-                TupleDesc td = j.getTupleDesc();
-                JoinPredicate jp = j.getJoinPredicate();
+            JoinPredicate jp = JoinOptimizer.getJoinPredicate(plan);
+            if (jp != null) {
+                String label = joinLabel(plan);
+                TupleDesc td = plan.getTupleDesc();
                 String field1 = td.getFieldName(jp.getField1());
                 String field2 = td.getFieldName(jp.getField2()
                         + children[0].getTupleDesc().numFields());
-                thisNode.text = String.format("%1$s(%2$s),card:%3$d", JOIN,
-                        field1 + jp.getOperator() + field2,j.getEstimatedCardinality());
+                thisNode.text = String.format("%1$s(%2$s),card:%3$d", label,
+                        field1 + jp.getOperator() + field2,plan.getEstimatedCardinality());
                 int upBarShift = parentUpperBarStartShift;
-                if (JOIN.length() / 2 > parentUpperBarStartShift)
-                    upBarShift = JOIN.length() / 2;
+                if (label.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = label.length() / 2;
 
                 SubTreeDescriptor left = this.buildTree(queryPlanDepth,
                         currentDepth + adjustDepth + 3, children[0],
@@ -128,35 +157,7 @@ public class QueryPlanVisualizer {
                         currentStartPosition + left.width + SPACE.length(), 0);
                 thisNode.upBarPosition = (left.upBarPosition + right.upBarPosition) / 2;
                 thisNode.textStartPosition = thisNode.upBarPosition
-                        - JOIN.length() / 2;
-                thisNode.width = Math.max(
-                        left.width + right.width + SPACE.length(),
-                        thisNode.textStartPosition + thisNode.text.length()
-                                - currentStartPosition);
-                thisNode.leftChild = left;
-                thisNode.rightChild = right;
-                thisNode.height = currentDepth;
-            } else if (plan instanceof HashEquiJoin) {
-                HashEquiJoin j = (HashEquiJoin) plan;
-                JoinPredicate jp = j.getJoinPredicate();
-                TupleDesc td = j.getTupleDesc();
-                String field1 = td.getFieldName(jp.getField1());
-                String field2 = td.getFieldName(jp.getField2()
-                        + children[0].getTupleDesc().numFields());
-                thisNode.text = String.format("%1$s(%2$s),card:%3$d", HASH_JOIN, field1
-                        + jp.getOperator() + field2,j.getEstimatedCardinality());
-                int upBarShift = parentUpperBarStartShift;
-                if (HASH_JOIN.length() / 2 > parentUpperBarStartShift)
-                    upBarShift = HASH_JOIN.length() / 2;
-                SubTreeDescriptor left = this.buildTree(queryPlanDepth,
-                        currentDepth + 3 + adjustDepth, children[0],
-                        currentStartPosition, upBarShift);
-                SubTreeDescriptor right = this.buildTree(queryPlanDepth,
-                        currentDepth + 3 + adjustDepth, children[1],
-                        currentStartPosition + left.width + SPACE.length(), 0);
-                thisNode.upBarPosition = (left.upBarPosition + right.upBarPosition) / 2;
-                thisNode.textStartPosition = thisNode.upBarPosition
-                        - HASH_JOIN.length() / 2;
+                        - label.length() / 2;
                 thisNode.width = Math.max(
                         left.width + right.width + SPACE.length(),
                         thisNode.textStartPosition + thisNode.text.length()
@@ -165,21 +166,42 @@ public class QueryPlanVisualizer {
                 thisNode.rightChild = right;
                 thisNode.height = currentDepth;
             }
-            else if (plan instanceof Aggregate) {
-                Aggregate a = (Aggregate) plan;
+            else if (plan instanceof Aggregate || plan instanceof StreamingAggregate
+                    || plan instanceof ParallelAggregate) {
                 int upBarShift = parentUpperBarStartShift;
                 String alignTxt;
-                TupleDesc td = a.getTupleDesc();
-                int gfield = a.groupField();
+                TupleDesc td = plan.getTupleDesc();
+                int gfield;
+                Aggregator.Op aop;
+                String afieldName;
+                String groupBy = GROUPBY;
+                if (plan instanceof StreamingAggregate) {
+                    StreamingAggregate a = (StreamingAggregate) plan;
+                    gfield = a.groupField();
+                    aop = a.aggregateOp();
+                    afieldName = a.aggregateFieldName();
+                    groupBy = SORTED_GROUPBY;
+                } else if (plan instanceof ParallelAggregate) {
+                    ParallelAggregate a = (ParallelAggregate) plan;
+                    gfield = a.groupField();
+                    aop = a.aggregateOp();
+                    afieldName = a.aggregateFieldName();
+                    groupBy = String.format(PARALLEL_GROUPBY, a.getWorkers());
+                } else {
+                    Aggregate a = (Aggregate) plan;
+                    gfield = a.groupField();
+                    aop = a.aggregateOp();
+                    afieldName = a.aggregateFieldName();
+                }
 
                 if (gfield == Aggregator.NO_GROUPING) {
                     thisNode.text = String.format("%1$s(%2$s),card:%3$d",
-                            a.aggregateOp(), a.aggregateFieldName(),a.getEstimatedCardinality());
+                            aop, afieldName,plan.getEstimatedCardinality());
                     alignTxt = td.getFieldName(00);
                 } else {
                     thisNode.text = String.format("%1$s(%2$s), %3$s(%4$s),card:%5$d",
-                            GROUPBY, a.groupFieldName(), a.aggregateOp(),
-                            a.aggregateFieldName(),a.getEstimatedCardinality());
+                            groupBy, td.getFieldName(0), aop,
+                            afieldName,plan.getEstimatedCardinality());
                     alignTxt = GROUPBY;
                 }
                 if (alignTxt.length() / 2 > parentUpperBarStartShift)
@@ -217,13 +239,19 @@ public class QueryPlanVisualizer {
                                 - currentStartPosition);
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
-            } else if (plan instanceof OrderBy) {
-                OrderBy o = (OrderBy) plan;
+            } else if (plan instanceof OrderBy || plan instanceof TopN) {
+                int[] orderByFields = plan instanceof OrderBy ? ((OrderBy) plan)
+                        .getOrderByFields() : ((TopN) plan).getOrderByFields();
+                String fields = "";
+                for (int f : orderByFields)
+                    fields += children[0].getTupleDesc().getFieldName(f) + ",";
+                fields = fields.substring(0, fields.length() - 1);
                 thisNode.text = String.format(
                         "%1$s(%2$s),card:%3$d",
                         ORDERBY,
-                        children[0].getTupleDesc().getFieldName(
-                                o.getOrderByField()),o.getEstimatedCardinality());
+                        fields,plan.getEstimatedCardinality());
+                if (plan instanceof TopN)
+                    thisNode.text += "," + LIMIT + ":" + ((TopN) plan).getLimit();
                 int upBarShift = parentUpperBarStartShift;
                 if (ORDERBY.length() / 2 > parentUpperBarStartShift)
                     upBarShift = ORDERBY.length() / 2;
@@ -238,6 +266,23 @@ public class QueryPlanVisualizer {
                                 - currentStartPosition);
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
+            } else if (plan instanceof Limit) {
+                thisNode.text = String.format("%1$s(%2$d),card:%3$d", LIMIT,
+                        ((Limit) plan).getLimit(), plan.getEstimatedCardinality());
+                int upBarShift = parentUpperBarStartShift;
+                if (LIMIT.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = LIMIT.length() / 2;
+                SubTreeDescriptor child = this.buildTree(queryPlanDepth,
+                        currentDepth + 2 + adjustDepth, children[0],
+                        currentStartPosition, upBarShift);
+                thisNode.upBarPosition = child.upBarPosition;
+                thisNode.textStartPosition = thisNode.upBarPosition
+                        - LIMIT.length() / 2;
+                thisNode.width = Math.max(child.width,
+                        thisNode.textStartPosition + thisNode.text.length()
+                                - currentStartPosition);
+                thisNode.leftChild = child;
+                thisNode.height = currentDepth;
             } else if (plan instanceof Project) {
                 Project p = (Project) plan;
                 String fields = "";
@@ -261,15 +306,9 @@ public class QueryPlanVisualizer {
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
             }
-            else if (plan.getClass().getSuperclass().getSuperclass().getSimpleName().equals("Exchange")) {
-                String name="Exchange";
-                int card=0;
-                try {
-                    name = (String) plan.getClass().getMethod("getName").invoke(plan);
-                    card = (Integer) plan.getClass().getMethod("getEstimatedCardinality").invoke(plan);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                } 
+            else if (plan instanceof Exchange) {
+                String name = ((Exchange) plan).getName();
+                int card = plan.getEstimatedCardinality();
 
                 thisNode.text = String.format("%1$s,card:%2$d", name,card);
                 int upBarShift = parentUpperBarStartShift;
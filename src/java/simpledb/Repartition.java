@@ -0,0 +1,67 @@
+package simpledb;
+
+/**
+ * Repartition is an exchange that splits the tuples of its children into
+ * partitions by the hash of one of their fields, so that all the tuples
+ * with the same value of that field are in the same partition. Every
+ * partition is read by a Repartition operator of its own, made by
+ * {@link #partitions}, and the partitions must be read concurrently.
+ */
+public class Repartition extends Exchange {
+
+    private static final long serialVersionUID = 1L;
+    private final int field;
+    private final int partition;
+
+    private Repartition(Producers producers, int field, int partition) {
+        super(producers, partition);
+        this.field = field;
+        this.partition = partition;
+    }
+
+    /**
+     * Creates the operators that read the partitions of the tuples of the
+     * specified children.
+     *
+     * @param children
+     *            the iterators whose tuples are partitioned, all with the
+     *            same TupleDesc
+     * @param field
+     *            the field whose hash picks the partition of a tuple
+     * @param numPartitions
+     *            the number of partitions
+     * @return one operator for each partition
+     */
+    public static Repartition[] partitions(DbIterator[] children, int field,
+            int numPartitions) {
+        if (field < 0 || field >= children[0].getTupleDesc().numFields())
+            throw new IllegalArgumentException("no field " + field + " to partition on");
+        Producers producers = new Producers(children, field, numPartitions);
+        Repartition[] ops = new Repartition[numPartitions];
+        for (int i = 0; i < numPartitions; i++)
+            ops[i] = new Repartition(producers, field, i);
+        return ops;
+    }
+
+    /** @return the field the tuples are partitioned on */
+    public int getField() {
+        return field;
+    }
+
+    /** @return the partition this operator reads */
+    public int getPartition() {
+        return partition;
+    }
+
+    public String getName() {
+        return "repartition(" + getTupleDesc().getFieldName(field) + ")#" + partition;
+    }
+
+    /**
+     * @throws DbException always, since the partitions are read together
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        throw new DbException("a partition of a repartition can't be rewound");
+    }
+
+}
@@ -0,0 +1,69 @@
+package simpledb;
+
+/**
+ * ReplacementPolicy decides which page the BufferPool should evict when it
+ * runs out of frames. The BufferPool reports every page it caches through
+ * {@link #pageAccessed} and every page it drops through {@link #pageRemoved};
+ * the policy only tracks PageIds, never the pages themselves.
+ * <p>
+ * Implementations must make each of these calls run in constant time, so
+ * that a page hit costs the same no matter how large the pool is.
+ *
+ * @see BufferPool
+ * @Threadsafe
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * The replacement policies a BufferPool can be created with.
+     *
+     * @see BufferPool#BufferPool(int, ReplacementPolicy.Kind)
+     * @see Database#resetBufferPool(int, ReplacementPolicy.Kind)
+     */
+    public enum Kind {
+        /** Plain least-recently-used replacement. */
+        LRU() {
+            @Override
+            public ReplacementPolicy create(int numPages) {
+                return new LRUReplacementPolicy(numPages);
+            }
+        },
+        /** Scan-resistant 2Q replacement. */
+        TWO_QUEUE() {
+            @Override
+            public ReplacementPolicy create(int numPages) {
+                return new TwoQueueReplacementPolicy(numPages);
+            }
+        };
+
+        /**
+         * @return a new policy of this kind for a pool of numPages frames
+         * @param numPages the number of frames in the pool
+         */
+        public abstract ReplacementPolicy create(int numPages);
+    }
+
+    /**
+     * Record that the specified page was read or written through the
+     * BufferPool. Called both when a page is first admitted to the pool and
+     * on every subsequent hit.
+     *
+     * @param pid the id of the page that was accessed
+     */
+    public void pageAccessed(PageId pid);
+
+    /**
+     * Forget the specified page, because the BufferPool no longer caches it.
+     * Does nothing if the page is not tracked.
+     *
+     * @param pid the id of the page that was removed
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Pick the page that should be evicted next and stop tracking it.
+     *
+     * @return the id of the victim page, or null if no page is tracked
+     */
+    public PageId evictionVictim();
+}
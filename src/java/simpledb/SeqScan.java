@@ -2,12 +2,18 @@ package simpledb;
 
 import java.util.*;
 
-import javax.transaction.TransactionRequiredException;
-
 /**
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
+ * <p>
+ * Predicates can be pushed down into the scan with {@link #addPredicate};
+ * the scan then only returns the tuples that satisfy all of them. Heap files
+ * evaluate them on the page bytes, before building the tuples.
+ * <p>
+ * A scan can be limited to a range of the pages of the table with
+ * {@link #setPageRange}, so that the pages can be split between several
+ * scans, as {@link ParallelSeqScan} does.
  */
 public class SeqScan implements DbIterator {
 
@@ -33,6 +39,12 @@ public class SeqScan implements DbIterator {
     private int tableid;
     private String tableAlias;
     private DbFileIterator dbFileIterator;
+    // conjunction of the predicates pushed down into this scan
+    private final ArrayList<Predicate> predicates = new ArrayList<Predicate>();
+    // the pages read are startPage up to but excluding endPage, or all of
+    // them if endPage is negative
+    private int startPage = 0;
+    private int endPage = -1;
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
         // some code goes here
         this.tid = tid;
@@ -50,6 +62,16 @@ public class SeqScan implements DbIterator {
         return Database.getCatalog().getTableName(tableid);
     }
 
+    /** @return the id of the table this operator scans */
+    public int getTableId() {
+        return tableid;
+    }
+
+    /** @return the transaction this scan is running as a part of */
+    public TransactionId getTransactionId() {
+        return tid;
+    }
+
     /**
      * @return Return the alias of the table this operator scans.
      * */
@@ -81,12 +103,97 @@ public class SeqScan implements DbIterator {
         this(tid, tableid, Database.getCatalog().getTableName(tableid));
     }
 
+    /**
+     * Push a predicate down into this scan; only tuples that satisfy it (and
+     * every other pushed predicate) are returned. Must be called before
+     * open().
+     *
+     * @param p a predicate on the fields of this scan's TupleDesc
+     */
+    public void addPredicate(Predicate p) {
+        predicates.add(p);
+    }
+
+    /** @return the predicates pushed down into this scan */
+    public List<Predicate> getPredicates() {
+        return Collections.unmodifiableList(predicates);
+    }
+
+    /**
+     * Limit this scan to the pages startPage up to but excluding endPage of
+     * the table, as {@link DbFile#iterator(TransactionId, int, int)} does.
+     * Must be called before open().
+     *
+     * @param startPage the number of the first page to read
+     * @param endPage one more than the number of the last page to read
+     */
+    public void setPageRange(int startPage, int endPage) {
+        if (startPage < 0 || endPage < startPage)
+            throw new IllegalArgumentException("invalid page range " + startPage + " to " + endPage);
+        this.startPage = startPage;
+        this.endPage = endPage;
+    }
+
+    /** @return true if this scan reads only a range of the pages of the table */
+    public boolean hasPageRange() {
+        return endPage >= 0;
+    }
+
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
-        dbFileIterator = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (file instanceof HeapFile) {
+            HeapFile hf = (HeapFile) file;
+            dbFileIterator = hasPageRange() ? hf.iterator(tid, startPage, endPage, predicates)
+                    : hf.iterator(tid, predicates);
+        } else {
+            DbFileIterator it = hasPageRange() ? file.iterator(tid, startPage, endPage)
+                    : file.iterator(tid);
+            dbFileIterator = predicates.isEmpty() ? it : new FilterIterator(it, predicates);
+        }
         dbFileIterator.open();
     }
 
+    /**
+     * Applies the pushed predicates to tuples of files that can't evaluate
+     * them themselves.
+     */
+    private static final class FilterIterator extends AbstractDbFileIterator {
+        private final DbFileIterator child;
+        private final List<Predicate> predicates;
+
+        FilterIterator(DbFileIterator child, List<Predicate> predicates) {
+            this.child = child;
+            this.predicates = predicates;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            while (child.hasNext()) {
+                Tuple t = child.next();
+                boolean matches = true;
+                for (int i = 0; i < predicates.size() && matches; i++)
+                    matches = predicates.get(i).filter(t);
+                if (matches)
+                    return t;
+            }
+            return null;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            super.close();
+            child.rewind();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+    }
+
     /**
      * Returns the TupleDesc with field names from the underlying HeapFile,
      * prefixed with the tableAlias string from the constructor. This prefix
@@ -0,0 +1,239 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * SortMergeJoin joins two relations that are both sorted in ascending
+ * order of their join fields, reading each of them in step with the other.
+ * <p>
+ * An equality join reads both relations once and holds only the inner
+ * tuples that share the current join field value in memory. In a range
+ * join the tuples matching a tuple of one relation are a prefix of the
+ * other relation, which is read again from its start for every such tuple
+ * and only up to the first tuple that does not match: for &gt; and &gt;=
+ * the inner relation is scanned for every outer tuple, for &lt; and &lt;=
+ * the outer relation for every inner tuple.
+ * <p>
+ * The output is sorted on the outer join field, and also on the inner one
+ * for an equality join; for &lt; and &lt;= it is sorted on the inner join
+ * field only. JoinOptimizer.instantiateJoin sorts the children that aren't
+ * sorted already.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private JoinPredicate pred;
+    private DbIterator child1, child2;
+    private TupleDesc td;
+
+    // equality join: the next outer and inner tuples, the inner tuples
+    // with the join field value of the current group, and the outer tuple
+    // being joined with them
+    private Tuple left, right;
+    private ArrayList<Tuple> group = new ArrayList<Tuple>();
+    private int groupPos;
+    private Tuple groupOuter;
+
+    // range join: the tuple of the driving relation that the other relation
+    // is being scanned for, or null
+    private Tuple driving;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children; any operator
+     *            but NOT_EQUALS and LIKE
+     * @param child1
+     *            Iterator for the left(outer) relation to join, sorted in
+     *            ascending order of the join field
+     * @param child2
+     *            Iterator for the right(inner) relation to join, sorted in
+     *            ascending order of the join field
+     * @throws IllegalArgumentException if the predicate can't be merge
+     *             joined
+     */
+    public SortMergeJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        if (!supports(p.getOperator()))
+            throw new IllegalArgumentException("can't merge join on " + p.getOperator());
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /** @return true if a SortMergeJoin can join on the specified operator */
+    public static boolean supports(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    /**
+     * @return
+     *       the field name of join field1. Should be quantified by
+     *       alias or table name.
+     * */
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(pred.getField1());
+    }
+
+    /**
+     * @return
+     *       the field name of join field2. Should be quantified by
+     *       alias or table name.
+     * */
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(pred.getField2());
+    }
+
+    /**
+     * @return true if the output of this join is in ascending order of the
+     *         specified field of its TupleDesc
+     */
+    public boolean isSortedOn(int field) {
+        int innerField = child1.getTupleDesc().numFields() + pred.getField2();
+        switch (pred.getOperator()) {
+        case EQUALS:
+            return field == pred.getField1() || field == innerField;
+        case LESS_THAN:
+        case LESS_THAN_OR_EQ:
+            return field == innerField;
+        default:
+            return field == pred.getField1();
+        }
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    // the tuples of the outer relation are scanned for every inner tuple
+    private boolean drivenByInner() {
+        return pred.getOperator() == Predicate.Op.LESS_THAN
+                || pred.getOperator() == Predicate.Op.LESS_THAN_OR_EQ;
+    }
+
+    private static Tuple nextOrNull(DbIterator it)
+            throws DbException, TransactionAbortedException {
+        return it.hasNext() ? it.next() : null;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        start();
+        super.open();
+    }
+
+    private void start() throws DbException, TransactionAbortedException {
+        group.clear();
+        groupOuter = null;
+        driving = null;
+        if (pred.getOperator() == Predicate.Op.EQUALS) {
+            left = nextOrNull(child1);
+            right = nextOrNull(child2);
+        }
+    }
+
+    public void close() {
+        group.clear();
+        groupOuter = left = right = driving = null;
+        child1.close();
+        child2.close();
+        super.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        child2.rewind();
+        start();
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (pred.getOperator() == Predicate.Op.EQUALS)
+            return fetchNextEquals();
+        return fetchNextRange();
+    }
+
+    private Tuple fetchNextEquals() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (groupOuter != null) {
+                if (groupPos < group.size())
+                    return Join.mergeTuples(td, groupOuter, group.get(groupPos++));
+                // the next outer tuple may have the same join field value
+                groupOuter = null;
+                Field key = group.get(0).getField(pred.getField2());
+                left = nextOrNull(child1);
+                if (left != null && left.getField(pred.getField1()).equals(key)) {
+                    groupOuter = left;
+                    groupPos = 0;
+                }
+                continue;
+            }
+            if (left == null || right == null)
+                return null;
+            Field leftKey = left.getField(pred.getField1());
+            Field rightKey = right.getField(pred.getField2());
+            if (leftKey.compare(Predicate.Op.LESS_THAN, rightKey)) {
+                left = nextOrNull(child1);
+            } else if (leftKey.compare(Predicate.Op.GREATER_THAN, rightKey)) {
+                right = nextOrNull(child2);
+            } else {
+                group.clear();
+                while (right != null && right.getField(pred.getField2()).equals(rightKey)) {
+                    group.add(right);
+                    right = nextOrNull(child2);
+                }
+                groupOuter = left;
+                groupPos = 0;
+            }
+        }
+    }
+
+    private Tuple fetchNextRange() throws TransactionAbortedException, DbException {
+        DbIterator drivingChild = drivenByInner() ? child2 : child1;
+        DbIterator scannedChild = drivenByInner() ? child1 : child2;
+        while (true) {
+            if (driving == null) {
+                driving = nextOrNull(drivingChild);
+                if (driving == null)
+                    return null;
+                scannedChild.rewind();
+            }
+            if (scannedChild.hasNext()) {
+                Tuple scanned = scannedChild.next();
+                Tuple outer = drivenByInner() ? scanned : driving;
+                Tuple inner = drivenByInner() ? driving : scanned;
+                if (pred.filter(outer, inner))
+                    return Join.mergeTuples(td, outer, inner);
+            }
+            // the rest of the scanned relation doesn't match either
+            driving = null;
+        }
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+}
@@ -0,0 +1,123 @@
+package simpledb;
+
+import java.io.*;
+import java.text.ParseException;
+
+/**
+ * SpillFile is a temporary file of tuples for operators whose working set
+ * does not fit in memory. Tuples are appended one at a time and read back
+ * sequentially, in the order they were added, through {@link #iterator}.
+ * <p>
+ * A spill file is private to the operator that made it, so it is not a
+ * DbFile: its tuples are written with {@link Field#serialize}, one after
+ * the other with no page structure, and are read without going through the
+ * BufferPool. The file is deleted by {@link #close}, or when the JVM exits
+ * at the latest.
+ */
+public class SpillFile {
+
+    private final TupleDesc td;
+    private final File f;
+    private DataOutputStream out;
+    private int numTuples;
+
+    /**
+     * Creates an empty spill file in the default temporary-file directory.
+     *
+     * @param td the TupleDesc of the tuples the file will hold
+     */
+    public SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.f = File.createTempFile("simpledb", ".spill");
+        this.f.deleteOnExit();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+    }
+
+    /** @return the TupleDesc of the tuples in this file */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the number of tuples added to this file */
+    public int numTuples() {
+        return numTuples;
+    }
+
+    /** Appends a tuple to the file. */
+    public void add(Tuple t) throws IOException {
+        for (int i = 0; i < td.numFields(); i++)
+            t.getField(i).serialize(out);
+        numTuples++;
+    }
+
+    /**
+     * Returns an iterator over the tuples added so far. Tuples added after
+     * the iterator was opened or rewound are not returned until it is
+     * rewound again.
+     */
+    public DbIterator iterator() {
+        return new SpillIterator();
+    }
+
+    /** Deletes the file. */
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // the file is deleted anyway
+        }
+        f.delete();
+    }
+
+    private class SpillIterator extends AbstractDbFileIterator implements DbIterator {
+
+        private DataInputStream in;
+        // tuples left to read
+        private int remaining;
+
+        public void open() throws DbException {
+            try {
+                out.flush();
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            } catch (IOException e) {
+                throw new DbException("unable to read spill file " + f + ": " + e);
+            }
+            remaining = numTuples;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return td;
+        }
+
+        protected Tuple readNext() throws DbException {
+            if (in == null || remaining == 0)
+                return null;
+            Tuple t = new Tuple(td);
+            try {
+                for (int i = 0; i < td.numFields(); i++)
+                    t.setField(i, td.getFieldType(i).parse(in));
+            } catch (ParseException e) {
+                throw new DbException("unable to read spill file " + f + ": " + e);
+            }
+            remaining--;
+            return t;
+        }
+
+        public void rewind() throws DbException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing was written through this stream
+                }
+                in = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * StreamingAggregate computes the same aggregate as {@link Aggregate}, for
+ * a child whose tuples are already ordered on the group-by field, or at
+ * least have the tuples of every group next to each other.
+ * <p>
+ * Only the group being read is kept in memory: a group is complete, and
+ * its result tuple is returned, as soon as a tuple with a different group
+ * value is read. The result tuples are in the order of the groups in the
+ * child.
+ */
+public class StreamingAggregate extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private DbIterator child;
+    private int afield, gfield;
+    private Aggregator.Op aggreOp;
+    private TupleDesc td;
+
+    // the first tuple of the next group, read while looking for the end of
+    // the previous one; null if it hasn't been read yet
+    private Tuple lookahead;
+
+    /**
+     * Constructor.
+     *
+     * @param child
+     *            The DbIterator that is feeding us tuples, with the tuples of
+     *            every group next to each other.
+     * @param afield
+     *            The column over which we are computing an aggregate.
+     * @param gfield
+     *            The column over which we are grouping the result, or -1 if
+     *            there is no grouping
+     * @param aop
+     *            The aggregation operator to use
+     */
+    public StreamingAggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop) {
+        this.child = child;
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aggreOp = aop;
+        // fails now if the operator can't be computed
+        newAggregator();
+        this.td = Aggregate.resultTupleDesc(child.getTupleDesc(), afield, gfield, aop);
+    }
+
+    /** @return an aggregator for the tuples of a single group */
+    private Aggregator newAggregator() {
+        if (child.getTupleDesc().getFieldType(afield).equals(Type.INT_TYPE))
+            return new IntegerAggregator(Aggregator.NO_GROUPING, null, afield, aggreOp);
+        else
+            return new StringAggregator(Aggregator.NO_GROUPING, null, afield, aggreOp);
+    }
+
+    /**
+     * @return the groupby field index in the <b>INPUT</b> tuples, or
+     *         {@link simpledb.Aggregator#NO_GROUPING}
+     */
+    public int groupField() {
+        return gfield;
+    }
+
+    /**
+     * @return the name of the groupby field in the <b>OUTPUT</b> tuples, or
+     *         null if there is no grouping
+     */
+    public String groupFieldName() {
+        return gfield == Aggregator.NO_GROUPING ? null : td.getFieldName(0);
+    }
+
+    /** @return the aggregate field */
+    public int aggregateField() {
+        return afield;
+    }
+
+    /** @return the name of the aggregate field in the <b>INPUT</b> tuples */
+    public String aggregateFieldName() {
+        return child.getTupleDesc().getFieldName(afield);
+    }
+
+    /** @return the aggregate operator */
+    public Aggregator.Op aggregateOp() {
+        return aggreOp;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws NoSuchElementException, DbException,
+            TransactionAbortedException {
+        child.open();
+        lookahead = null;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        lookahead = null;
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        lookahead = null;
+    }
+
+    /**
+     * Operator.fetchNext implementation. Reads the child tuples of the next
+     * group and returns its result tuple, laid out as those of
+     * {@link Aggregate}.
+     *
+     * @return the result tuple of the next group, or null if there are no
+     *         more groups
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        Tuple t = lookahead;
+        lookahead = null;
+        if (t == null) {
+            if (!child.hasNext())
+                return null;
+            t = child.next();
+        }
+        Field group = gfield == Aggregator.NO_GROUPING ? null : t.getField(gfield);
+        Aggregator aggregator = newAggregator();
+        while (true) {
+            aggregator.mergeTupleIntoGroup(t);
+            if (!child.hasNext())
+                break;
+            t = child.next();
+            if (group != null && !group.equals(t.getField(gfield))) {
+                lookahead = t;
+                break;
+            }
+        }
+
+        DbIterator it = Aggregate.results(aggregator);
+        Field value = it.next().getField(0);
+        it.close();
+        Tuple result = new Tuple(td);
+        if (group == null) {
+            result.setField(0, value);
+        } else {
+            result.setField(0, group);
+            result.setField(1, value);
+        }
+        return result;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child = children[0];
+    }
+
+}
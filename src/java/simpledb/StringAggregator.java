@@ -1,8 +1,8 @@
 package simpledb;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Knows how to compute some aggregate over a set of StringFields.
@@ -37,7 +37,8 @@ public class StringAggregator implements Aggregator {
         this.gbfieldtype = gbfieldtype;
         this.afield = afield;
         this.aggreOp = what;
-        Counts = new ConcurrentHashMap<>();
+        // a HashMap, since the group value is null if there is no grouping
+        Counts = new HashMap<>();
         if (gbfield == Aggregator.NO_GROUPING)
         {
             this.tupleDesc = new TupleDesc(new Type[] { Type.INT_TYPE }, new String[] { "aggregateValue" });
@@ -67,6 +68,15 @@ public class StringAggregator implements Aggregator {
         Counts.put(groupfield, cnt + 1);
     }
 
+    public boolean hasGroup(Tuple tup) {
+        return Counts.containsKey(gbfield == Aggregator.NO_GROUPING ? null
+                : tup.getField(gbfield));
+    }
+
+    public int numGroups() {
+        return Counts.size();
+    }
+
     /**
      * Create a DbIterator over group aggregate results.
      *
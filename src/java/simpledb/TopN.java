@@ -0,0 +1,156 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * TopN is an operator that implements ORDER BY ... LIMIT n: it returns the
+ * first n tuples of its child in the order of one or more of their fields.
+ * <p>
+ * TopN keeps only the n best tuples read so far, in a heap whose head is
+ * the worst of them, so it needs memory for n tuples rather than for the
+ * whole child relation.
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private DbIterator child;
+    private TupleDesc td;
+    private int[] orderByFields;
+    private boolean[] asc;
+    private int limit;
+    private TupleComparator comparator;
+
+    // the result, in order
+    private ArrayList<Tuple> top = new ArrayList<Tuple>();
+    private Iterator<Tuple> it;
+
+    /**
+     * Creates a new TopN node over the tuples from the iterator.
+     *
+     * @param orderbyField
+     *            the field to which the sort is applied.
+     * @param asc
+     *            true if the sort order is ascending.
+     * @param limit
+     *            the number of tuples to return.
+     * @param child
+     *            the tuples to sort.
+     */
+    public TopN(int orderbyField, boolean asc, int limit, DbIterator child) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, limit, child);
+    }
+
+    /**
+     * Creates a new TopN node over the tuples from the iterator, sorting on
+     * several fields as {@link OrderBy} does.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if the sort order is ascending.
+     * @param limit
+     *            the number of tuples to return.
+     * @param child
+     *            the tuples to sort.
+     */
+    public TopN(int[] orderbyFields, boolean[] asc, int limit, DbIterator child) {
+        if (limit < 0)
+            throw new IllegalArgumentException("negative limit " + limit);
+        this.child = child;
+        this.td = child.getTupleDesc();
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.limit = limit;
+        this.comparator = new TupleComparator(td, orderbyFields, asc);
+    }
+
+    /** @return true if the sort order of the first sort field is ascending */
+    public boolean isASC() {
+        return this.asc[0];
+    }
+
+    /** @return the first sort field */
+    public int getOrderByField() {
+        return this.orderByFields[0];
+    }
+
+    /** @return the fields to which the sort is applied, most significant first */
+    public int[] getOrderByFields() {
+        return this.orderByFields.clone();
+    }
+
+    /** @return for each sort field, true if its sort order is ascending */
+    public boolean[] getAscending() {
+        return this.asc.clone();
+    }
+
+    /** @return the number of tuples this operator returns at most */
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        top.clear();
+        if (limit > 0) {
+            // the worst of the best tuples so far is at the head
+            PriorityQueue<Tuple> heap = new PriorityQueue<Tuple>(limit,
+                    Collections.reverseOrder(comparator));
+            while (child.hasNext()) {
+                Tuple t = child.next();
+                if (heap.size() < limit) {
+                    heap.add(t);
+                } else if (comparator.compare(t, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(t);
+                }
+            }
+            top.addAll(heap);
+            Collections.sort(top, comparator);
+        }
+        it = top.iterator();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        it = null;
+        top.clear();
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        it = top.iterator();
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the first limit tuples of
+     * the child operator in order
+     *
+     * @return The next tuple in the ordering, or null if there are no more
+     *         tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (it != null && it.hasNext())
+            return it.next();
+        return null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child = children[0];
+    }
+
+}
@@ -0,0 +1,92 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Scan-resistant 2Q replacement (Johnson and Shasha, VLDB '94).
+ * <p>
+ * A page seen for the first time goes into a small FIFO queue, A1in. Pages
+ * that fall off A1in are forgotten but their ids are remembered in a ghost
+ * queue, A1out. Only a page that is referenced again while its id is still
+ * in A1out is promoted to the main LRU queue, Am. A sequential scan touches
+ * every page once, so its pages cycle through A1in without ever displacing
+ * the hot pages (B+ tree internal and root pointer pages, for example)
+ * that live in Am.
+ *
+ * @Threadsafe
+ */
+public class TwoQueueReplacementPolicy implements ReplacementPolicy {
+
+    /* the values of these maps are unused -- only the key order matters */
+    private final LinkedHashMap<PageId, Boolean> a1in;
+    private final LinkedHashMap<PageId, Boolean> a1out;
+    private final LinkedHashMap<PageId, Boolean> am;
+
+    private final int kin;
+    private final int kout;
+
+    /**
+     * Creates a 2Q policy with the sizes recommended by the paper: A1in
+     * holds a quarter of the frames and A1out remembers half as many page
+     * ids as there are frames.
+     *
+     * @param numPages the number of frames in the pool
+     */
+    public TwoQueueReplacementPolicy(int numPages) {
+        this(numPages, Math.max(1, numPages / 4), Math.max(1, numPages / 2));
+    }
+
+    /**
+     * @param numPages the number of frames in the pool
+     * @param kin the target size of the A1in queue
+     * @param kout the maximum number of page ids remembered in A1out
+     */
+    public TwoQueueReplacementPolicy(int numPages, int kin, int kout) {
+        int capacity = Math.max(16, numPages * 4 / 3 + 1);
+        this.a1in = new LinkedHashMap<PageId, Boolean>(capacity);
+        this.a1out = new LinkedHashMap<PageId, Boolean>(Math.max(16, kout * 4 / 3 + 1));
+        this.am = new LinkedHashMap<PageId, Boolean>(capacity, 0.75f, true);
+        this.kin = kin;
+        this.kout = kout;
+    }
+
+    public synchronized void pageAccessed(PageId pid) {
+        if (am.containsKey(pid)) {
+            am.get(pid); // refresh its position in the LRU order
+        } else if (a1in.containsKey(pid)) {
+            // correlated references within A1in do not count as reuse
+        } else if (a1out.remove(pid) != null) {
+            am.put(pid, Boolean.TRUE);
+        } else {
+            a1in.put(pid, Boolean.TRUE);
+        }
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        if (a1in.remove(pid) == null && am.remove(pid) == null)
+            a1out.remove(pid);
+    }
+
+    public synchronized PageId evictionVictim() {
+        if (a1in.size() > kin || am.isEmpty()) {
+            PageId victim = removeHead(a1in);
+            if (victim != null) {
+                a1out.put(victim, Boolean.TRUE);
+                if (a1out.size() > kout)
+                    removeHead(a1out);
+                return victim;
+            }
+        }
+        return removeHead(am);
+    }
+
+    private static PageId removeHead(LinkedHashMap<PageId, Boolean> queue) {
+        Iterator<PageId> it = queue.keySet().iterator();
+        if (!it.hasNext())
+            return null;
+        PageId head = it.next();
+        it.remove();
+        return head;
+    }
+}
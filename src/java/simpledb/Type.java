@@ -24,6 +24,11 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(byte[] data, int offset) {
+            return new IntField(readInt(data, offset));
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,6 +47,14 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(byte[] data, int offset) throws ParseException {
+            int strLen = readInt(data, offset);
+            if (strLen < 0 || strLen > STRING_LEN)
+                throw new ParseException("couldn't parse", offset);
+            return new StringField(new String(data, offset + 4, strLen), STRING_LEN);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -60,4 +73,23 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object whose contents
+   *   are the getLen() bytes of data starting at offset, in the format
+   *   written by {@link Field#serialize}.
+   * @param data The bytes to read from
+   * @param offset The offset of the field in data
+   * @throws ParseException if the bytes are not of the appropriate type.
+   */
+    public abstract Field parse(byte[] data, int offset) throws ParseException;
+
+  /**
+   * @return the big-endian int (as written by DataOutputStream.writeInt)
+   *   stored in the 4 bytes of data starting at offset.
+   */
+    public static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
 }
@@ -3,8 +3,11 @@ package simpledb;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import junit.framework.JUnit4TestAdapter;
 
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -176,6 +179,58 @@ public class AggregateTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(min, op);
   }
 
+  /**
+   * Unit test for Aggregate.getNext() with more groups than fit in its
+   * memory budget, so that groups are spilled and partitioned several times
+   */
+  @Test public void spilledGroupBy() throws Exception {
+    int[] values = new int[2 * 2000];
+    for (int i = 0; i < 2000; i++) {
+      values[2 * i] = i % 1000;
+      values[2 * i + 1] = i;
+    }
+    DbIterator input = TestUtil.createTupleList(width1, values);
+    int groupBytes = Utility.getTupleDesc(2).getSize();
+    Aggregate op = new Aggregate(input, 1, 0, Aggregator.Op.SUM, 10 * groupBytes);
+    op.open();
+
+    // every group value once, with the sum of its two tuples
+    boolean[] seen = new boolean[1000];
+    for (int pass = 0; pass < 2; pass++) {
+      Arrays.fill(seen, false);
+      int count = 0;
+      while (op.hasNext()) {
+        Tuple t = op.next();
+        int g = ((IntField) t.getField(0)).getValue();
+        assertTrue(!seen[g]);
+        seen[g] = true;
+        assertEquals(new IntField(g + (g + 1000)), t.getField(1));
+        count++;
+      }
+      assertEquals(1000, count);
+      op.rewind();
+    }
+    op.close();
+  }
+
+  /**
+   * Unit test for Aggregate.open() with a SUM that doesn't fit in an int:
+   * a DbException that names the group
+   */
+  @Test public void sumOverflow() throws Exception {
+    Aggregate op = new Aggregate(TestUtil.createTupleList(width1,
+        new int[] { 1, Integer.MAX_VALUE,
+                    1, 1,
+                    2, 3 }), 1, 0, Aggregator.Op.SUM);
+    try {
+      op.open();
+      fail("expected DbException");
+    } catch (DbException e) {
+      assertTrue(e.getMessage().contains("sum"));
+      assertTrue(e.getMessage().contains("group 1"));
+    }
+  }
+
   /**
    * JUnit suite target
    */
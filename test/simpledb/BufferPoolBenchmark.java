@@ -0,0 +1,86 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures BufferPool.getPage throughput with 1 to N threads, comparing a
+ * single-shard pool against a sharded one. Every thread reads random pages
+ * of a heap file that is twice as large as the pool, so roughly half of the
+ * requests are misses that read and evict pages.
+ * <p>
+ * Run with <code>ant runbench -Dbench=BufferPoolBenchmark</code>; the optional
+ * arguments (<code>-Dbench.args="..."</code>) are the maximum number of
+ * threads, the number of requests per thread and the number of shards.
+ */
+public class BufferPoolBenchmark {
+
+    private static final int POOL_PAGES = 1024;
+    private static final int FILE_PAGES = 2 * POOL_PAGES;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        // two int columns give 504 tuples per page
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, FILE_PAGES * 504, null, null);
+        int shards = args.length > 2 ? Integer.parseInt(args[2])
+                : Math.max(2, new BufferPool(POOL_PAGES).getNumShards());
+        System.out.println("pool of " + POOL_PAGES + " pages, file of " + hf.numPages()
+                + " pages, " + requests + " requests per thread");
+        System.out.println("threads\t1 shard (req/s)\t" + shards + " shards (req/s)");
+        ArrayList<Integer> threadCounts = new ArrayList<Integer>();
+        for (int threads = 1; threads < maxThreads; threads *= 2)
+            threadCounts.add(threads);
+        threadCounts.add(maxThreads);
+        for (int threads : threadCounts) {
+            double single = run(hf, new BufferPool(POOL_PAGES, ReplacementPolicy.Kind.LRU, 1),
+                    threads, requests);
+            double sharded = run(hf, new BufferPool(POOL_PAGES, ReplacementPolicy.Kind.LRU, shards),
+                    threads, requests);
+            System.out.printf("%d\t%.0f\t%.0f%n", threads, single, sharded);
+        }
+    }
+
+    /** @return the number of getPage calls per second over all threads */
+    private static double run(final HeapFile hf, final BufferPool pool, int threads,
+            final int requests) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong failures = new AtomicLong();
+        final int numPages = hf.numPages();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            new Thread() {
+                public void run() {
+                    Random r = new Random(seed);
+                    TransactionId tid = new TransactionId();
+                    try {
+                        start.await();
+                        for (int i = 0; i < requests; i++) {
+                            HeapPageId pid = new HeapPageId(hf.getId(), r.nextInt(numPages));
+                            pool.getPage(tid, pid, Permissions.READ_ONLY);
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        if (failures.get() > 0)
+            throw new RuntimeException(failures.get() + " benchmark threads failed");
+        return (double) threads * requests / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,137 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        // two int columns give 504 tuples per page
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 20, null, null);
+        tid = new TransactionId();
+    }
+
+    /**
+     * Unit test for BufferPool.getPage() on a sharded pool that is smaller
+     * than the file being read.
+     */
+    @Test public void shardedGetPage() throws Exception {
+        BufferPool pool = new BufferPool(8, ReplacementPolicy.Kind.LRU, 4);
+        assertEquals(4, pool.getNumShards());
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < hf.numPages(); i++) {
+                HeapPageId pid = new HeapPageId(hf.getId(), i);
+                HeapPage p = (HeapPage) pool.getPage(tid, pid, Permissions.READ_ONLY);
+                assertEquals(pid, p.getId());
+                // a page just fetched must be a hit
+                assertSame(p, pool.getPage(tid, pid, Permissions.READ_ONLY));
+            }
+        }
+    }
+
+    /**
+     * Unit test for BufferPool.discardPage() on a sharded pool
+     */
+    @Test public void shardedDiscardPage() throws Exception {
+        BufferPool pool = new BufferPool(8, ReplacementPolicy.Kind.TWO_QUEUE, 2);
+        HeapPageId pid = new HeapPageId(hf.getId(), 3);
+        Page p = pool.getPage(tid, pid, Permissions.READ_ONLY);
+        pool.discardPage(pid);
+        Page again = pool.getPage(tid, pid, Permissions.READ_ONLY);
+        assertEquals(pid, again.getId());
+        assertNotSame(p, again);
+    }
+
+    /**
+     * Unit test for BufferPool read-ahead: two sequential page requests make
+     * the pool read the following pages in the background.
+     */
+    @Test public void sequentialReadAhead() throws Exception {
+        BufferPool pool = new BufferPool(16);
+        HeapPageId next = new HeapPageId(hf.getId(), 5);
+        HeapPageId last = new HeapPageId(hf.getId(), 8);
+        HeapPageId beyond = new HeapPageId(hf.getId(), 9);
+        pool.getPage(tid, new HeapPageId(hf.getId(), 3), Permissions.READ_ONLY);
+        Thread.sleep(100);
+        assertFalse(pool.isCached(new HeapPageId(hf.getId(), 4)));
+        pool.getPage(tid, new HeapPageId(hf.getId(), 4), Permissions.READ_ONLY);
+        // a 16 page pool reads 4 pages ahead
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!(pool.isCached(next) && pool.isCached(last))
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(pool.isCached(next));
+        assertTrue(pool.isCached(last));
+        assertFalse(pool.isCached(beyond));
+    }
+
+    /**
+     * Unit test for BufferPool.ScanState.request(): the page requests of
+     * scans of different ranges of a table interleave, as those of the
+     * workers of a ParallelSeqScan do, and each scan is still read ahead.
+     */
+    @Test public void interleavedScanStreams() throws Exception {
+        BufferPool.ScanState scan = new BufferPool.ScanState();
+        // a single request is no scan, even of the first page
+        assertNull(scan.request(0, 4));
+        assertNull(scan.request(10, 4));
+        assertNull(scan.request(20, 4));
+        assertArrayEquals(new int[] { 12, 15 }, scan.request(11, 4));
+        assertArrayEquals(new int[] { 22, 25 }, scan.request(21, 4));
+        // the same page again, and pages read ahead already
+        assertNull(scan.request(21, 4));
+        assertArrayEquals(new int[] { 16, 16 }, scan.request(12, 4));
+        assertArrayEquals(new int[] { 26, 26 }, scan.request(22, 4));
+
+        // random requests replace the least recently used streams only
+        for (int i = 0; i < BufferPool.MAX_SCAN_STREAMS - 2; i++)
+            assertNull(scan.request(100 + 2 * i, 4));
+        assertArrayEquals(new int[] { 27, 27 }, scan.request(23, 4));
+        // one more replaces the stream that was idle the longest
+        assertNull(scan.request(200, 4));
+        assertNull(scan.request(13, 4));
+    }
+
+    /**
+     * Unit test for BufferPool read-ahead of two interleaved sequential
+     * scans of the same table.
+     */
+    @Test public void interleavedReadAhead() throws Exception {
+        BufferPool pool = new BufferPool(32);
+        for (int i = 0; i < 2; i++) {
+            pool.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+            pool.getPage(tid, new HeapPageId(hf.getId(), 10 + i), Permissions.READ_ONLY);
+        }
+        HeapPageId next = new HeapPageId(hf.getId(), 2);
+        HeapPageId otherNext = new HeapPageId(hf.getId(), 12);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!(pool.isCached(next) && pool.isCached(otherNext))
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(pool.isCached(next));
+        assertTrue(pool.isCached(otherNext));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolTest.class);
+    }
+}
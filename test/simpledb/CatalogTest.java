@@ -1,7 +1,11 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
@@ -93,6 +97,30 @@ public class CatalogTest extends SimpleDbTestBase {
     	assertEquals(f, Database.getCatalog().getDatabaseFile(id2));
     }
 
+    /**
+     * Unit test for Catalog.loadSchema() with the optional mmap table mode
+     */
+    @Test public void loadSchemaMemoryMapped() throws Exception {
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        String plain = "t" + r.nextInt(Integer.MAX_VALUE);
+        String mapped = "m" + r.nextInt(Integer.MAX_VALUE);
+        FileWriter w = new FileWriter(schema);
+        w.write(plain + " (a int pk, b string)\n");
+        w.write(mapped + " (a int, b int) mmap\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getPath());
+
+        HeapFile f = (HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId(plain));
+        assertFalse(f.isMemoryMapped());
+        assertEquals("a", Database.getCatalog().getPrimaryKey(f.getId()));
+        f = (HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId(mapped));
+        assertTrue(f.isMemoryMapped());
+        assertEquals(2, f.getTupleDesc().numFields());
+    }
+
     /**
      * JUnit suite target
      */
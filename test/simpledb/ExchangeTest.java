@@ -0,0 +1,143 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ExchangeTest extends SimpleDbTestBase {
+
+  int width = 2;
+  int[] values;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createValues() {
+    // more tuples than a queue holds, so the producers have to wait
+    Random r = new Random(7);
+    values = new int[width * 3 * Exchange.QUEUE_CAPACITY];
+    for (int i = 0; i < values.length; i++)
+      values[i] = r.nextInt(100);
+  }
+
+  /**
+   * Unit test for Gather.getNext() over several children
+   */
+  @Test public void gather() throws Exception {
+    Gather op = new Gather(new DbIterator[] {
+        TestUtil.createTupleList(width, values),
+        TestUtil.createTupleList(width, values),
+        TestUtil.createTupleList(width, new int[] { 1000, 1000 }) });
+    HashMap<String, Integer> expected =
+        TestUtil.tupleCounts(TestUtil.createTupleList(width, values));
+    for (String t : expected.keySet())
+      expected.put(t, 2 * expected.get(t));
+    expected.put(TestUtil.createTupleList(width, new int[] { 1000, 1000 })
+        .next().toString(), 1);
+    assertEquals(expected, TestUtil.tupleCounts(op));
+  }
+
+  /**
+   * Unit test for Gather.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    Gather op = new Gather(new DbIterator[] { TestUtil.createTupleList(width, values) });
+    op.open();
+    int count = 0;
+    while (op.hasNext()) {
+      op.next();
+      count++;
+    }
+    op.rewind();
+    while (op.hasNext()) {
+      op.next();
+      count--;
+    }
+    assertEquals(0, count);
+    op.close();
+  }
+
+  /**
+   * Unit test for Repartition: every group value is in exactly one
+   * partition, and no tuple is lost
+   */
+  @Test public void repartition() throws Exception {
+    Repartition[] partitions = Repartition.partitions(new DbIterator[] {
+        TestUtil.createTupleList(width, values) }, 0, 4);
+    assertEquals(4, partitions.length);
+    DbIterator[] aggregates = new DbIterator[partitions.length];
+    for (int i = 0; i < partitions.length; i++)
+      aggregates[i] = new Aggregate(partitions[i], 1, 0, Aggregator.Op.COUNT);
+    HashMap<String, Integer> groups = TestUtil.tupleCounts(new Gather(aggregates));
+    HashMap<String, Integer> expected = TestUtil.tupleCounts(new Aggregate(
+        TestUtil.createTupleList(width, values), 1, 0, Aggregator.Op.COUNT));
+    assertEquals(expected, groups);
+
+    try {
+      partitions[0].rewind();
+      fail("expected exception");
+    } catch (DbException e) {
+    }
+  }
+
+  /**
+   * Unit test for Broadcast: every output returns every tuple
+   */
+  @Test public void broadcast() throws Exception {
+    Broadcast[] outputs = Broadcast.outputs(new DbIterator[] {
+        TestUtil.createTupleList(width, values) }, 3);
+    HashMap<String, Integer> expected =
+        TestUtil.tupleCounts(TestUtil.createTupleList(width, values));
+    for (String t : expected.keySet())
+      expected.put(t, 3 * expected.get(t));
+    assertEquals(expected, TestUtil.tupleCounts(new Gather(outputs)));
+  }
+
+  /**
+   * Unit test for LogicalPlan.physicalPlan() running a join and a grouped
+   * aggregate on several threads
+   */
+  @Test public void parallelPlan() throws Exception {
+    HeapFile f1 = SystemTestUtil.createRandomHeapFile(2, 2000, 100, null,
+        new ArrayList<ArrayList<Integer>>(), "c");
+    HeapFile f2 = SystemTestUtil.createRandomHeapFile(2, 300, 100, null,
+        new ArrayList<ArrayList<Integer>>(), "c");
+    Database.getCatalog().addTable(f1, "TX1");
+    Database.getCatalog().addTable(f2, "TX2");
+    TableStats.setTableStats("TX1", new TableStats(f1.getId(), 19));
+    TableStats.setTableStats("TX2", new TableStats(f2.getId(), 19));
+    String[] queries = new String[] {
+        "SELECT a.c0, b.c1 FROM TX1 a, TX2 b WHERE a.c0 = b.c0;",
+        "SELECT a.c0, COUNT(a.c1) FROM TX1 a, TX2 b WHERE a.c0 = b.c0 GROUP BY a.c0;" };
+
+    for (String query : queries) {
+      TransactionId tid = new TransactionId();
+      DbIterator serial = new Parser().generateLogicalPlan(tid, query)
+          .physicalPlan(tid, TableStats.getStatsMap(), false);
+      LogicalPlan lp = new Parser().generateLogicalPlan(tid, query);
+      lp.setParallelism(4);
+      DbIterator parallel = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+      assertTrue(((Project) parallel).getChildren()[0] instanceof Gather);
+      assertEquals(TestUtil.tupleCounts(serial), TestUtil.tupleCounts(parallel));
+      Database.getBufferPool().transactionComplete(tid);
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ExchangeTest.class);
+  }
+}
@@ -0,0 +1,141 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class FileHandleTest extends SimpleDbTestBase {
+
+    private File f;
+    private FileHandle handle;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        f = File.createTempFile("filehandle", ".dat");
+        f.deleteOnExit();
+        handle = new FileHandle(f);
+    }
+
+    @After public void tearDown() throws Exception {
+        handle.close();
+    }
+
+    /**
+     * Unit test for FileHandle.write() and FileHandle.read()
+     */
+    @Test public void writeRead() throws Exception {
+        handle.write(4, new byte[] { 1, 2, 3 });
+        assertEquals(7, handle.size());
+        byte[] buf = new byte[4];
+        assertEquals(4, handle.read(3, buf));
+        assertArrayEquals(new byte[] { 0, 1, 2, 3 }, buf);
+        // a read past the end returns what is there
+        assertEquals(1, handle.read(6, buf));
+        assertEquals(0, handle.read(7, buf));
+    }
+
+    /**
+     * Unit test for FileHandle.append()
+     */
+    @Test public void append() throws Exception {
+        assertEquals(0, handle.append(new byte[] { 5, 6 }));
+        assertEquals(2, handle.append(new byte[] { 7 }));
+        byte[] buf = new byte[3];
+        handle.readFully(0, buf);
+        assertArrayEquals(new byte[] { 5, 6, 7 }, buf);
+    }
+
+    /**
+     * Unit test for FileHandle.close(): the handle reopens the file on the
+     * next access.
+     */
+    @Test public void closeReopen() throws Exception {
+        handle.write(0, new byte[] { 9 });
+        handle.close();
+        assertEquals(1, handle.size());
+        byte[] buf = new byte[1];
+        handle.readFully(0, buf);
+        assertEquals(9, buf[0]);
+    }
+
+    /**
+     * Unit test for reads of a read-only file, and for a write after reads
+     * through the same handle.
+     */
+    @Test public void readOnly() throws Exception {
+        handle.write(0, new byte[] { 1, 2 });
+        handle.close();
+        f.setReadOnly();
+        byte[] buf = new byte[2];
+        handle.readFully(0, buf);
+        assertArrayEquals(new byte[] { 1, 2 }, buf);
+
+        f.setWritable(true);
+        handle.write(1, new byte[] { 3 });
+        handle.readFully(0, buf);
+        assertArrayEquals(new byte[] { 1, 3 }, buf);
+    }
+
+    /**
+     * Unit test for reading a missing file: it fails and doesn't create it.
+     */
+    @Test public void readMissing() throws Exception {
+        File missing = new File(f.getPath() + ".missing");
+        FileHandle h = new FileHandle(missing);
+        try {
+            h.read(0, new byte[1]);
+            fail("expected exception");
+        } catch (FileNotFoundException e) {
+        }
+        assertFalse(missing.exists());
+        assertEquals(0, h.size());
+        h.close();
+    }
+
+    /**
+     * Unit test for memory-mapped reads: data written after the file was
+     * mapped, including data past the end of the mapping, must be visible.
+     */
+    @Test public void memoryMapped() throws Exception {
+        handle.setMemoryMapped(true);
+        handle.write(0, new byte[] { 1, 2 });
+        byte[] buf = new byte[2];
+        handle.readFully(0, buf);
+        assertArrayEquals(new byte[] { 1, 2 }, buf);
+
+        handle.write(1, new byte[] { 3 });
+        handle.append(new byte[] { 4, 5 });
+        assertEquals(2, handle.read(2, new byte[4]));
+        handle.readFully(1, buf);
+        assertArrayEquals(new byte[] { 3, 4 }, buf);
+        assertEquals(0, handle.read(4, buf));
+        assertEquals(0, handle.read(9, buf));
+    }
+
+    /**
+     * Unit test for FileHandle.readFully() past the end of the file
+     */
+    @Test(expected = EOFException.class) public void readFullyPastEnd() throws Exception {
+        handle.readFully(0, new byte[1]);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FileHandleTest.class);
+    }
+}
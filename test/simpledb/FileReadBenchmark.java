@@ -0,0 +1,78 @@
+package simpledb;
+
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures HeapFile.readPage throughput when pages are read with a
+ * RandomAccessFile opened per page (how HeapFile used to read them), with
+ * positional reads on the shared FileChannel, and from a memory mapping of
+ * the file. Pages are read in random order straight from the file, without
+ * the BufferPool, so the numbers compare the I/O paths alone (the file is
+ * small enough to stay in the operating system's cache).
+ * <p>
+ * Run with <code>ant runbench -Dbench=FileReadBenchmark</code>; the optional
+ * arguments (<code>-Dbench.args="..."</code>) are the number of pages in the
+ * file and the number of pages to read.
+ */
+public class FileReadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        // two int columns give 504 tuples per page
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, pages * 504, null, null);
+        System.out.println("file of " + hf.numPages() + " pages, " + reads + " reads");
+        System.out.println("path\tpages/s");
+        // run every path twice and report the second, warmed-up run
+        for (int round = 0; round < 2; round++) {
+            double raf = runRandomAccessFile(hf, reads);
+            hf.setMemoryMapped(false);
+            double channel = run(hf, reads);
+            hf.setMemoryMapped(true);
+            double mmap = run(hf, reads);
+            if (round == 1) {
+                System.out.printf("RandomAccessFile\t%.0f%n", raf);
+                System.out.printf("FileChannel\t%.0f%n", channel);
+                System.out.printf("mmap\t%.0f%n", mmap);
+            }
+        }
+        hf.close();
+    }
+
+    /** @return the number of HeapFile.readPage calls per second */
+    private static double run(HeapFile hf, int reads) {
+        Random r = new Random(0);
+        int numPages = hf.numPages();
+        long begin = System.nanoTime();
+        for (int i = 0; i < reads; i++)
+            hf.readPage(new HeapPageId(hf.getId(), r.nextInt(numPages)));
+        return reads / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    /**
+     * @return the number of pages read per second by opening, seeking,
+     *         reading and closing a RandomAccessFile for each page
+     */
+    private static double runRandomAccessFile(HeapFile hf, int reads) throws Exception {
+        Random r = new Random(0);
+        int numPages = hf.numPages();
+        long begin = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            int pgNo = r.nextInt(numPages);
+            byte[] bytes = new byte[BufferPool.getPageSize()];
+            RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "r");
+            try {
+                raf.seek((long) pgNo * BufferPool.getPageSize());
+                raf.readFully(bytes);
+            } finally {
+                raf.close();
+            }
+            new HeapPage(new HeapPageId(hf.getId(), pgNo), bytes);
+        }
+        return reads / ((System.nanoTime() - begin) / 1e9);
+    }
+}
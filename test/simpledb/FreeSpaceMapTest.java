@@ -0,0 +1,133 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    private File f;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        f = File.createTempFile("fsm", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.mapFile(f).deleteOnExit();
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.firstPageWithSpace() and setFull()
+     */
+    @Test public void firstPageWithSpace() throws Exception {
+        FreeSpaceMap map = new FreeSpaceMap(f);
+        assertEquals(0, map.firstPageWithSpace(3));
+        map.setFull(0, true);
+        map.setFull(1, true);
+        assertEquals(2, map.firstPageWithSpace(3));
+        map.setFull(2, true);
+        assertEquals(3, map.firstPageWithSpace(3));
+        map.setFull(1, false);
+        assertEquals(1, map.firstPageWithSpace(3));
+        map.close();
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.pageWritten(): only the state of written
+     * pages survives closing the map.
+     */
+    @Test public void pageWritten() throws Exception {
+        setNumPages(12);
+        FreeSpaceMap map = new FreeSpaceMap(f);
+        for (int i = 0; i < 10; i++)
+            map.pageWritten(i, true);
+        map.pageWritten(9, false);
+        map.setFull(10, true);
+        map.close();
+
+        map = new FreeSpaceMap(f);
+        assertEquals(9, map.firstPageWithSpace(12));
+        map.setFull(9, true);
+        // page 10 was never written, so nothing is known about it
+        assertEquals(10, map.firstPageWithSpace(12));
+        map.close();
+    }
+
+    /**
+     * Unit test for FreeSpaceMap discarding the map saved for an older heap
+     * file at the same path
+     */
+    @Test public void staleMap() throws Exception {
+        setNumPages(4);
+        FreeSpaceMap map = new FreeSpaceMap(f);
+        for (int i = 0; i < 4; i++)
+            map.pageWritten(i, true);
+        map.close();
+        map = new FreeSpaceMap(f);
+        assertEquals(4, map.firstPageWithSpace(4));
+        map.close();
+
+        // a new file of a different size, with room on every page
+        setNumPages(6);
+        map = new FreeSpaceMap(f);
+        assertEquals(0, map.firstPageWithSpace(6));
+        map.pageWritten(5, false);
+        map.close();
+        // the stale bits are gone from disk too
+        map = new FreeSpaceMap(f);
+        assertEquals(0, map.firstPageWithSpace(6));
+        map.close();
+    }
+
+    /** Sets the length of the heap file to the specified number of pages */
+    private void setNumPages(int numPages) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength((long) numPages * BufferPool.getPageSize());
+        raf.close();
+    }
+
+    /**
+     * Unit test for HeapFile.insertTuple(): inserts fill the page freed
+     * by a delete before adding a new page.
+     */
+    @Test public void heapFileReusesFreedSlot() throws Exception {
+        // two int columns give 504 tuples per page
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 3, null, null);
+        TransactionId tid = new TransactionId();
+        assertEquals(3, hf.numPages());
+        // fill the map: every page is full
+        hf.insertTuple(tid, Utility.getHeapTuple(1, 2));
+        assertEquals(4, hf.numPages());
+
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple victim = null;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (t.getRecordId().getPageId().pageNumber() == 1)
+                victim = t;
+        }
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, victim);
+
+        Tuple t = Utility.getHeapTuple(2, 2);
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        assertEquals(1, t.getRecordId().getPageId().pageNumber());
+        assertEquals(4, hf.numPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -130,6 +130,80 @@ public class HashEquiJoinTest extends SimpleDbTestBase {
       validateJoin(1,10,1,30001);
   }
 
+  /**
+   * Joins an outer relation with keys 0..outerRows-1 and an inner relation
+   * with every key in 0..innerKeys-1 twice, keeping at most budgetTuples
+   * inner tuples in memory, and checks that every match is produced.
+   */
+  private void validateSpilledJoin(int outerRows, int innerKeys, int budgetTuples)
+          throws Exception {
+    int[] outer = new int[outerRows * width1];
+    for (int i = 0; i < outerRows; i++) {
+      outer[i * width1] = i;
+      outer[i * width1 + 1] = -i;
+    }
+    int[] inner = new int[2 * innerKeys * width2];
+    for (int i = 0; i < 2 * innerKeys; i++) {
+      inner[i * width2] = i % innerKeys;
+      inner[i * width2 + 1] = i;
+    }
+    DbIterator outerScan = TestUtil.createTupleList(width1, outer);
+    DbIterator innerScan = TestUtil.createTupleList(width2, inner);
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin op = new HashEquiJoin(pred, outerScan, innerScan,
+        budgetTuples * innerScan.getTupleDesc().getSize());
+    op.open();
+    int[] matches = new int[innerKeys];
+    int cnt = 0;
+    while (op.hasNext()) {
+      Tuple t = op.next();
+      int key = ((IntField) t.getField(0)).getValue();
+      assertEquals(key, ((IntField) t.getField(width1)).getValue());
+      assertEquals(-key, ((IntField) t.getField(1)).getValue());
+      matches[key]++;
+      cnt++;
+    }
+    op.close();
+    assertEquals(2 * Math.min(outerRows, innerKeys), cnt);
+    for (int i = 0; i < Math.min(outerRows, innerKeys); i++)
+      assertEquals(2, matches[i]);
+  }
+
+  /**
+   * Unit test for HashEquiJoin.getNext() with an inner relation that does
+   * not fit in memory
+   */
+  @Test public void spilledJoin() throws Exception {
+    // spilled once
+    validateSpilledJoin(300, 200, 100);
+    // spilled partitions that are split again
+    validateSpilledJoin(300, 500, 10);
+  }
+
+  /**
+   * Unit test for HashEquiJoin.getNext() with a single join key that does
+   * not fit in memory
+   */
+  @Test public void spilledSingleKey() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    int[] outer = new int[10 * width1];
+    int[] inner = new int[100 * width2];
+    DbIterator outerScan = TestUtil.createTupleList(width1, outer);
+    DbIterator innerScan = TestUtil.createTupleList(width2, inner);
+    HashEquiJoin op = new HashEquiJoin(pred, outerScan, innerScan,
+        innerScan.getTupleDesc().getSize());
+    op.open();
+    int cnt = 0;
+    while (op.hasNext()) {
+      op.next();
+      cnt++;
+    }
+    assertEquals(1000, cnt);
+    op.rewind();
+    assertTrue(op.hasNext());
+    op.close();
+  }
+
   /**
    * JUnit suite target
    */
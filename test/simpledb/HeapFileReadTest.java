@@ -121,6 +121,43 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         it.close();
     }
 
+    /**
+     * Unit test for HeapFile.iterator() over ranges of pages
+     */
+    @Test
+    public void testIteratorPageRange() throws Exception {
+        HeapFile threePageFile = SystemTestUtil.createRandomHeapFile(2, 1200,
+                null, null);
+        assertEquals(3, threePageFile.numPages());
+
+        int total = 0;
+        for (int i = 0; i < 3; i++) {
+            DbFileIterator it = threePageFile.iterator(tid, i, i + 1,
+                    Collections.<Predicate>emptyList());
+            it.open();
+            int count = 0;
+            while (it.hasNext()) {
+                assertEquals(i, it.next().getRecordId().getPageId().pageNumber());
+                count++;
+            }
+            assertTrue(count > 0);
+            total += count;
+            it.close();
+        }
+        assertEquals(1200, total);
+
+        // an empty range, and one past the end of the file
+        DbFileIterator it = threePageFile.iterator(tid, 1, 1,
+                Collections.<Predicate>emptyList());
+        it.open();
+        assertFalse(it.hasNext());
+        it = threePageFile.iterator(tid, 2, 10, Collections.<Predicate>emptyList());
+        it.open();
+        assertTrue(it.hasNext());
+        while (it.hasNext())
+            assertEquals(2, it.next().getRecordId().getPageId().pageNumber());
+    }
+
     /**
      * JUnit suite target
      */
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.util.ArrayList;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +45,30 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.insertTuples()
+     */
+    @Test public void addTuples() throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 2 + 1; ++i)
+            tuples.add(Utility.getHeapTuple(i, 2));
+        ArrayList<Page> dirty = empty.insertTuples(tid, tuples);
+        assertEquals(3, empty.numPages());
+        assertEquals(3, dirty.size());
+        for (int i = 0; i < tuples.size(); ++i)
+            assertEquals(i / 504, tuples.get(i).getRecordId().getPageId().pageNumber());
+
+        // the last page has room for 503 more; it is dirtied only once
+        Database.getBufferPool().insertTuples(tid, empty.getId(), tuples.subList(0, 503));
+        assertEquals(3, empty.numPages());
+        for (Tuple t : tuples.subList(0, 503))
+            assertEquals(2, t.getRecordId().getPageId().pageNumber());
+        HeapPage last = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(empty.getId(), 2), Permissions.READ_ONLY);
+        assertEquals(0, last.getNumEmptySlots());
+        assertEquals(tid, last.isDirty());
+    }
+
     /**
      * JUnit suite target
      */
@@ -10,6 +10,7 @@ import java.util.*;
 
 import org.junit.Before;
 import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -120,6 +121,40 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for HeapPage.getField(): fields are decoded without building
+     * the tuple, and agree with the tuple once it is built.
+     */
+    @Test public void getField() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        for (int row = 0; row < EXAMPLE_VALUES.length; row++) {
+            assertEquals(new IntField(EXAMPLE_VALUES[row][1]), page.getField(row, 1));
+            Tuple tup = page.getTuple(row);
+            assertEquals(new IntField(EXAMPLE_VALUES[row][0]), page.getField(row, 0));
+            assertEquals(tup.getField(1), page.getField(row, 1));
+        }
+        // undecoded slots are copied to the page data as they were read
+        assertArrayEquals(EXAMPLE_DATA, new HeapPage(pid, EXAMPLE_DATA).getPageData());
+    }
+
+    /**
+     * Unit test for HeapPage.iterator() on a page with empty slots between
+     * the used ones
+     */
+    @Test public void testIteratorSkipsEmptySlots() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        page.deleteTuple(page.getTuple(0));
+        page.deleteTuple(page.getTuple(7));
+        Iterator<Tuple> it = page.iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            int slot = it.next().getRecordId().tupleno();
+            assertTrue(slot != 0 && slot != 7);
+            count++;
+        }
+        assertEquals(EXAMPLE_VALUES.length - 2, count);
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,179 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int width2 = 2;
+  int[] outer = new int[] { 1, 2,
+                            3, 4,
+                            5, 6,
+                            7, 8,
+                            3, 9 };
+  DbIterator scan1;
+  BTreeFile f;
+  TransactionId tid;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTables() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1, outer);
+    // keyed on the second field, with values between 0 and 10
+    this.f = BTreeUtility.createRandomBTreeFile(width2, 200, 10, null, null, 1);
+    Database.getCatalog().addTable(f, "inner");
+    this.tid = new TransactionId();
+  }
+
+  @After public void tearDown() throws Exception {
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Checks an IndexNestedLoopJoin on op against a nested loops join that
+   * scans the whole inner table
+   */
+  private void checkJoin(Predicate.Op op, Predicate filter) throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, op, 1);
+    SeqScan inner = new SeqScan(tid, f.getId());
+    SeqScan expectedInner = new SeqScan(tid, f.getId());
+    if (filter != null) {
+      inner.addPredicate(filter);
+      expectedInner.addPredicate(filter);
+    }
+    Join expected = new Join(pred,
+        TestUtil.createTupleList(width1, outer), expectedInner);
+    expected.open();
+    IndexNestedLoopJoin actual = new IndexNestedLoopJoin(pred, scan1, inner);
+    actual.open();
+    assertEquals(TestUtil.countTuples(expected), TestUtil.countTuples(actual));
+    expected.rewind();
+    TestUtil.matchAllTuples(expected, actual);
+  }
+
+  /**
+   * Unit test for IndexNestedLoopJoin.getTupleDesc()
+   */
+  @Test public void getTupleDesc() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 1);
+    IndexNestedLoopJoin op = new IndexNestedLoopJoin(pred, scan1,
+        new SeqScan(tid, f.getId(), "t"));
+    TupleDesc expected = TupleDesc.merge(scan1.getTupleDesc(),
+        new SeqScan(tid, f.getId(), "t").getTupleDesc());
+    assertTrue(expected.equals(op.getTupleDesc()));
+  }
+
+  /**
+   * Unit test for IndexNestedLoopJoin.getNext() using an = predicate
+   */
+  @Test public void eqJoin() throws Exception {
+    checkJoin(Predicate.Op.EQUALS, null);
+  }
+
+  /**
+   * Unit test for IndexNestedLoopJoin.getNext() using range predicates
+   */
+  @Test public void rangeJoin() throws Exception {
+    checkJoin(Predicate.Op.GREATER_THAN, null);
+    checkJoin(Predicate.Op.GREATER_THAN_OR_EQ, null);
+    checkJoin(Predicate.Op.LESS_THAN, null);
+    checkJoin(Predicate.Op.LESS_THAN_OR_EQ, null);
+  }
+
+  /**
+   * Unit test for IndexNestedLoopJoin.getNext() applying the predicates
+   * pushed down into the inner scan
+   */
+  @Test public void pushedPredicate() throws Exception {
+    checkJoin(Predicate.Op.EQUALS,
+        new Predicate(0, Predicate.Op.LESS_THAN, new IntField(5)));
+  }
+
+  /**
+   * Unit test for IndexNestedLoopJoin.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 1);
+    IndexNestedLoopJoin op = new IndexNestedLoopJoin(pred, scan1,
+        new SeqScan(tid, f.getId()));
+    op.open();
+    int count = TestUtil.countTuples(op);
+    assertTrue(count > 0);
+    op.rewind();
+    assertEquals(count, TestUtil.countTuples(op));
+  }
+
+  /**
+   * Unit test for IndexNestedLoopJoin.canProbe()
+   */
+  @Test public void canProbe() throws Exception {
+    SeqScan inner = new SeqScan(tid, f.getId());
+    assertTrue(IndexNestedLoopJoin.canProbe(
+        new JoinPredicate(0, Predicate.Op.LESS_THAN, 1), inner));
+    // not the key field
+    assertFalse(IndexNestedLoopJoin.canProbe(
+        new JoinPredicate(0, Predicate.Op.EQUALS, 0), inner));
+    assertFalse(IndexNestedLoopJoin.canProbe(
+        new JoinPredicate(0, Predicate.Op.NOT_EQUALS, 1), inner));
+    try {
+      new IndexNestedLoopJoin(new JoinPredicate(0, Predicate.Op.NOT_EQUALS, 1),
+          scan1, inner);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Unit test for JoinOptimizer.instantiateJoin() with an index nested loops
+   * join whose inner relation isn't a scan of the indexed table, and for
+   * JoinOptimizer.isSortedOn() over an IndexNestedLoopJoin
+   */
+  @Test public void instantiateJoin() throws Exception {
+    BTreeFile outerFile = BTreeUtility.createRandomBTreeFile(width1, 50, 10, null, null, 0);
+    Database.getCatalog().addTable(outerFile, "outer");
+    SeqScan outerScan = new SeqScan(tid, outerFile.getId(), "a");
+    // keyed on the first field, since the fields of the tables are unnamed
+    BTreeFile innerFile = BTreeUtility.createRandomBTreeFile(width2, 50, 10, null, null, 0);
+    Database.getCatalog().addTable(innerFile, "inner0");
+    SeqScan inner = new SeqScan(tid, innerFile.getId(), "b");
+    String f1 = outerScan.getTupleDesc().getFieldName(0);
+    String f2 = inner.getTupleDesc().getFieldName(0);
+
+    LogicalJoinNode lj = new LogicalJoinNode("a", "b", f1, f2, Predicate.Op.EQUALS);
+    lj.algorithm = LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP;
+    DbIterator j = JoinOptimizer.instantiateJoin(lj, outerScan, inner);
+    assertTrue(j instanceof IndexNestedLoopJoin);
+    // the output follows the outer relation, a B+ tree scan on its key
+    assertTrue(JoinOptimizer.isSortedOn(j, 0));
+    assertFalse(JoinOptimizer.isSortedOn(j, 1));
+
+    // falls back to the default algorithm of the predicate
+    Filter filtered = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN,
+        new IntField(2)), inner);
+    assertTrue(JoinOptimizer.instantiateJoin(lj, outerScan, filtered)
+        instanceof HashEquiJoin);
+    lj = new LogicalJoinNode("a", "b", f1, f2, Predicate.Op.LESS_THAN);
+    lj.algorithm = LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP;
+    assertTrue(JoinOptimizer.instantiateJoin(lj, outerScan, filtered)
+        instanceof BlockNestedLoopJoin);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+  }
+}
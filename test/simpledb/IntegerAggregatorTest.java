@@ -178,6 +178,132 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * Test IntegerAggregator computing several aggregates in one pass
+   */
+  @Test public void mergeMultiple() throws Exception {
+    scan1.open();
+    IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE,
+        new int[] { 1, 1, 1, 1, 1 },
+        new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.MIN,
+            Aggregator.Op.MAX, Aggregator.Op.AVG, Aggregator.Op.COUNT });
+    while (scan1.hasNext())
+      agg.mergeTupleIntoGroup(scan1.next());
+    DbIterator it = agg.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(6,
+        new int[] { 1, 12, 2, 6, 4, 3,
+                    3, 12, 2, 6, 4, 3,
+                    5, 7, 7, 7, 7, 1 }), it);
+  }
+
+  /**
+   * Test IntegerAggregator.merge() of aggregators of disjoint sets of
+   * tuples, with partial sums that don't fit in an int
+   */
+  @Test public void merge() throws Exception {
+    for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.MIN,
+        Aggregator.Op.AVG, Aggregator.Op.COUNT }) {
+      IntegerAggregator first = new IntegerAggregator(0, Type.INT_TYPE, 1, op);
+      IntegerAggregator second = new IntegerAggregator(0, Type.INT_TYPE, 1, op);
+      IntegerAggregator all = new IntegerAggregator(0, Type.INT_TYPE, 1, op);
+      scan1.open();
+      for (int i = 0; scan1.hasNext(); i++) {
+        Tuple t = scan1.next();
+        (i % 2 == 0 ? first : second).mergeTupleIntoGroup(t);
+        all.mergeTupleIntoGroup(t);
+      }
+      scan1.close();
+      first.merge(second);
+      DbIterator it = first.iterator();
+      it.open();
+      DbIterator expected = all.iterator();
+      expected.open();
+      TestUtil.matchAllTuples(expected, it);
+      assertEquals(all.numGroups(), first.numGroups());
+    }
+
+    IntegerAggregator positive = new IntegerAggregator(Aggregator.NO_GROUPING, null, 0,
+        Aggregator.Op.SUM);
+    IntegerAggregator negative = new IntegerAggregator(Aggregator.NO_GROUPING, null, 0,
+        Aggregator.Op.SUM);
+    for (int i = 0; i < 3; i++) {
+      positive.mergeTupleIntoGroup(TestUtil.createTupleList(1,
+          new int[] { Integer.MAX_VALUE }).next());
+      negative.mergeTupleIntoGroup(TestUtil.createTupleList(1,
+          new int[] { -Integer.MAX_VALUE }).next());
+    }
+    positive.merge(negative);
+    DbIterator it = positive.iterator();
+    it.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(1, new int[] { 0 }), it);
+  }
+
+  /**
+   * Test IntegerAggregator averaging values whose sum doesn't fit in an int
+   */
+  @Test public void largeAvg() throws Exception {
+    IntegerAggregator agg = new IntegerAggregator(Aggregator.NO_GROUPING, null,
+        0, Aggregator.Op.AVG);
+    DbIterator values = TestUtil.createTupleList(1,
+        new int[] { Integer.MAX_VALUE, Integer.MAX_VALUE - 2 });
+    while (values.hasNext())
+      agg.mergeTupleIntoGroup(values.next());
+    DbIterator it = agg.iterator();
+    it.open();
+    assertEquals(new IntField(Integer.MAX_VALUE - 1), it.next().getField(0));
+  }
+
+  /**
+   * Test IntegerAggregator with more groups than its initial capacity, and
+   * with int and string group values
+   */
+  @Test public void manyGroups() throws Exception {
+    int[] ints = new int[2 * 1000];
+    Object[] strings = new Object[2 * 1000];
+    for (int i = 0; i < 1000; i++) {
+      ints[2 * i] = i % 300 * 7919;
+      ints[2 * i + 1] = i;
+      strings[2 * i] = "g" + i % 300;
+      strings[2 * i + 1] = i % 300 * 7919;
+    }
+    IntegerAggregator byInt = new IntegerAggregator(0, Type.INT_TYPE, 1,
+        Aggregator.Op.COUNT);
+    IntegerAggregator byString = new IntegerAggregator(0, Type.STRING_TYPE, 1,
+        Aggregator.Op.SUM);
+    DbIterator intTuples = TestUtil.createTupleList(2, ints);
+    while (intTuples.hasNext())
+      byInt.mergeTupleIntoGroup(intTuples.next());
+    DbIterator stringTuples = TestUtil.createTupleList(2, strings);
+    while (stringTuples.hasNext())
+      byString.mergeTupleIntoGroup(stringTuples.next());
+
+    DbIterator it = byInt.iterator();
+    it.open();
+    int groups = 0;
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      int g = ((IntField) t.getField(0)).getValue() / 7919;
+      assertEquals(new IntField(g < 1000 % 300 ? 4 : 3), t.getField(1));
+      groups++;
+    }
+    assertEquals(300, groups);
+
+    it = byString.iterator();
+    it.open();
+    groups = 0;
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      int g = Integer.parseInt(((StringField) t.getField(0)).getValue().substring(1));
+      int sum = 0;
+      for (int i = g; i < 1000; i += 300)
+        sum += g * 7919;
+      assertEquals(new IntField(sum), t.getField(1));
+      groups++;
+    }
+    assertEquals(300, groups);
+  }
+
   /**
    * JUnit suite target
    */
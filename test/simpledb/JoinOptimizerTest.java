@@ -38,6 +38,7 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
             throws IOException {
         File temp = File.createTempFile("table", ".dat");
         temp.deleteOnExit();
+        FreeSpaceMap.mapFile(temp).deleteOnExit();
         HeapFileEncoder.convert(tuples, temp, BufferPool.getPageSize(), columns);
         return Utility.openHeapFile(columns, colPrefix, temp);
     }
@@ -145,6 +146,95 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
         checkJoinEstimateCosts(jo, equalsJoinNode);
     }
 
+    /**
+     * Verify that orderJoins() records the cheapest join algorithm on the
+     * joins it returns, and that instantiateJoin() builds that operator.
+     */
+    @Test
+    public void chooseJoinAlgorithmTest() throws ParsingException {
+        TransactionId tid = new TransactionId();
+        Parser p = new Parser();
+        JoinOptimizer jo = new JoinOptimizer(p.generateLogicalPlan(tid,
+                "SELECT * FROM " + tableName1 + " t1, " + tableName2
+                        + " t2 WHERE t1.c1 = t2.c2;"),
+                new Vector<LogicalJoinNode>());
+        LogicalJoinNode equalsJoinNode = new LogicalJoinNode(tableName1,
+                tableName2, "c1", "c2",
+                Predicate.Op.EQUALS);
+        LogicalJoinNode ltJoinNode = new LogicalJoinNode(tableName1,
+                tableName2, "c1", "c2",
+                Predicate.Op.LESS_THAN);
+
+        // a hash join is the cheapest equality join, and can't compute
+        // anything else
+        Assert.assertEquals(LogicalJoinNode.Algorithm.HASH,
+                jo.cheapestAlgorithm(equalsJoinNode, 1000, 1000, 100, 100));
+        Assert.assertEquals(Double.MAX_VALUE, jo.estimateJoinCost(
+                LogicalJoinNode.Algorithm.HASH, ltJoinNode, 1000, 1000, 100,
+                100), 0);
+        // the nested loops join keeps the inner relation in memory, and so
+        // is only an option for small inner relations
+        Assert.assertEquals(LogicalJoinNode.Algorithm.NESTED_LOOP,
+                jo.cheapestAlgorithm(ltJoinNode, 1000, 10, 100, 100));
+        // a large range join is merged, a large != join can't be
+        Assert.assertEquals(LogicalJoinNode.Algorithm.SORT_MERGE,
+                jo.cheapestAlgorithm(ltJoinNode, 1000, 10000000, 100, 100000));
+        LogicalJoinNode neJoinNode = new LogicalJoinNode(tableName1,
+                tableName2, "c1", "c2", Predicate.Op.NOT_EQUALS);
+        Assert.assertEquals(LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP,
+                jo.cheapestAlgorithm(neJoinNode, 1000, 10000000, 100, 100000));
+        // a merge join of sorted inputs is as cheap as a hash join
+        Assert.assertEquals(LogicalJoinNode.Algorithm.SORT_MERGE,
+                jo.cheapestAlgorithm(equalsJoinNode, 1000, 1000, 100, 100,
+                        true, true));
+        Assert.assertEquals(LogicalJoinNode.Algorithm.HASH,
+                jo.cheapestAlgorithm(equalsJoinNode, 1000, 1000, 100, 100,
+                        true, false));
+        // a small outer relation is best joined by searching the index of
+        // a large inner relation, if it has one
+        Assert.assertEquals(LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP,
+                jo.cheapestAlgorithm(equalsJoinNode, 10, 100000, 10, 10000,
+                        false, false, true));
+        Assert.assertEquals(Double.MAX_VALUE, jo.estimateJoinCost(
+                LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP, equalsJoinNode,
+                10, 100000, 10, 10000), 0);
+
+        // the chosen algorithm is the one that's costed and instantiated
+        LogicalJoinNode bnl = ltJoinNode
+                .withAlgorithm(LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP);
+        Assert.assertEquals(jo.estimateJoinCost(
+                LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP, ltJoinNode, 1000,
+                10, 100, 100), jo.estimateJoinCost(bnl, 1000, 10, 100, 100), 0);
+        DbIterator scan1 = new SeqScan(tid, tableId1, tableName1);
+        DbIterator scan2 = new SeqScan(tid, tableId2, tableName2);
+        Assert.assertTrue(JoinOptimizer.instantiateJoin(bnl, scan1, scan2)
+                instanceof BlockNestedLoopJoin);
+        Assert.assertTrue(JoinOptimizer.instantiateJoin(equalsJoinNode
+                .withAlgorithm(LogicalJoinNode.Algorithm.HASH), scan1, scan2)
+                instanceof HashEquiJoin);
+        Assert.assertTrue(JoinOptimizer.instantiateJoin(equalsJoinNode
+                .withAlgorithm(LogicalJoinNode.Algorithm.NESTED_LOOP), scan1,
+                scan2) instanceof Join);
+        // a merge join sorts the inputs that aren't sorted
+        DbIterator merge = JoinOptimizer.instantiateJoin(ltJoinNode
+                .withAlgorithm(LogicalJoinNode.Algorithm.SORT_MERGE), scan1,
+                scan2);
+        Assert.assertTrue(merge instanceof SortMergeJoin);
+        Assert.assertTrue(((Operator) merge).getChildren()[0] instanceof OrderBy);
+        Assert.assertTrue(((Operator) merge).getChildren()[1] instanceof OrderBy);
+
+        // a join with a subquery is left to the default, a hash join for
+        // an equality, which doesn't cache the subquery in memory
+        LogicalSubplanJoinNode subplanJoinNode = new LogicalSubplanJoinNode(
+                tableName1, "c1", scan2, Predicate.Op.EQUALS);
+        LogicalJoinNode.Algorithm subplanAlgorithm = jo.cheapestAlgorithm(
+                subplanJoinNode, 1000, 1000, 100, 100);
+        Assert.assertNull(subplanAlgorithm);
+        Assert.assertTrue(JoinOptimizer.instantiateJoin(subplanJoinNode
+                .withAlgorithm(subplanAlgorithm), scan1, scan2)
+                instanceof HashEquiJoin);
+    }
+
     private void checkJoinEstimateCosts(JoinOptimizer jo,
             LogicalJoinNode equalsJoinNode) {
         int card1s[] = new int[20];
@@ -105,6 +105,21 @@ public class JoinTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(eqJoin, op);
   }
 
+  /**
+   * Unit test for Join.getNext() returning matches before the outer child
+   * has been read to the end
+   */
+  @Test public void pipelined() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    Join op = new Join(pred, scan1, scan2);
+    op.open();
+    eqJoin.open();
+    assertTrue(TestUtil.compareTuples(eqJoin.next(), op.next()));
+    // only the first outer tuple has been consumed
+    assertTrue(scan1.hasNext());
+    assertEquals(new IntField(3), scan1.next().getField(0));
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,74 @@
+package simpledb;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LimitTest extends SimpleDbTestBase {
+
+  int width = 2;
+  DbIterator scan;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan = TestUtil.createTupleList(width,
+        new int[] { 1, 2,
+                    3, 4,
+                    5, 6,
+                    7, 8 });
+  }
+
+  /**
+   * Unit test for Limit.getNext()
+   */
+  @Test public void getNext() throws Exception {
+    Limit op = new Limit(2, scan);
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(width,
+        new int[] { 1, 2,
+                    3, 4 });
+    TestUtil.compareDbIterators(expected, op);
+    assertTrue(TestUtil.checkExhausted(op));
+    // the child isn't read past the limit
+    assertTrue(scan.hasNext());
+  }
+
+  /**
+   * Unit test for Limit.getNext() with a limit of 0
+   */
+  @Test public void zero() throws Exception {
+    Limit op = new Limit(0, scan);
+    op.open();
+    assertFalse(op.hasNext());
+  }
+
+  /**
+   * Unit test for Limit.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    Limit op = new Limit(3, scan);
+    op.open();
+    while (op.hasNext())
+      op.next();
+    op.rewind();
+    DbIterator expected = TestUtil.createTupleList(width,
+        new int[] { 1, 2,
+                    3, 4,
+                    5, 6 });
+    TestUtil.compareDbIterators(expected, op);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LimitTest.class);
+  }
+}
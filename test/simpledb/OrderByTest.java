@@ -0,0 +1,176 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+  int width = 2;
+  int[] values;
+  DbIterator scan;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    Random r = new Random(17);
+    values = new int[width * 1000];
+    for (int i = 0; i < values.length; i++)
+      values[i] = r.nextInt(100);
+    scan = TestUtil.createTupleList(width, values);
+  }
+
+  /**
+   * @return the tuples of scan sorted on the specified field with
+   *         Collections.sort
+   */
+  private DbIterator expected(int field, boolean asc) throws Exception {
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    scan.open();
+    while (scan.hasNext())
+      tuples.add(scan.next());
+    scan.close();
+    Collections.sort(tuples, new TupleComparator(scan.getTupleDesc(), field, asc));
+    TupleIterator it = new TupleIterator(scan.getTupleDesc(), tuples);
+    it.open();
+    return it;
+  }
+
+  /**
+   * Checks that op returns the tuples of scan in the specified order
+   */
+  private void checkSorted(OrderBy op, int field, boolean asc) throws Exception {
+    DbIterator expected = expected(field, asc);
+    TupleComparator order = new TupleComparator(op.getTupleDesc(), field, asc);
+    op.open();
+    int count = 0;
+    Tuple prev = null;
+    while (op.hasNext()) {
+      Tuple t = op.next();
+      if (prev != null)
+        assertTrue(order.compare(prev, t) <= 0);
+      prev = t;
+      count++;
+    }
+    assertEquals(values.length / width, count);
+    op.rewind();
+    TestUtil.matchAllTuples(expected, op);
+    op.close();
+  }
+
+  /**
+   * Unit test for OrderBy.getNext() sorting in memory
+   */
+  @Test public void inMemory() throws Exception {
+    checkSorted(new OrderBy(0, true, scan), 0, true);
+    checkSorted(new OrderBy(1, false, scan), 1, false);
+  }
+
+  /**
+   * Unit test for OrderBy.getNext() merging sorted runs from spill files,
+   * with more runs than are merged at a time
+   */
+  @Test public void external() throws Exception {
+    int runBytes = 10 * scan.getTupleDesc().getSize();
+    checkSorted(new OrderBy(0, true, scan, runBytes), 0, true);
+    checkSorted(new OrderBy(1, false, scan, runBytes), 1, false);
+  }
+
+  /**
+   * Unit test for OrderBy.rewind() after spilling
+   */
+  @Test public void rewind() throws Exception {
+    OrderBy op = new OrderBy(0, true, scan, 50 * scan.getTupleDesc().getSize());
+    op.open();
+    Tuple first = op.next();
+    while (op.hasNext())
+      op.next();
+    op.rewind();
+    assertTrue(TestUtil.compareTuples(first, op.next()));
+    op.close();
+  }
+
+  /**
+   * Unit test for OrderBy.getNext() on two fields in opposite orders, in
+   * memory and merging spilled runs
+   */
+  @Test public void multipleFields() throws Exception {
+    int[] fields = new int[] { 0, 1 };
+    boolean[] asc = new boolean[] { true, false };
+    int runBytes = 10 * scan.getTupleDesc().getSize();
+    for (OrderBy op : new OrderBy[] { new OrderBy(fields, asc, scan),
+        new OrderBy(fields, asc, scan, runBytes) }) {
+      TupleComparator order = new TupleComparator(op.getTupleDesc(), fields, asc);
+      op.open();
+      int count = 0;
+      Tuple prev = null;
+      while (op.hasNext()) {
+        Tuple t = op.next();
+        if (prev != null)
+          assertTrue(order.compare(prev, t) <= 0);
+        prev = t;
+        count++;
+      }
+      assertEquals(values.length / width, count);
+      op.close();
+    }
+  }
+
+  /**
+   * Unit test for TupleComparator on string fields
+   */
+  @Test public void compareStrings() {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+    Tuple a = new Tuple(td);
+    a.setField(0, new StringField("apple", Type.STRING_LEN));
+    Tuple b = new Tuple(td);
+    b.setField(0, new StringField("banana", Type.STRING_LEN));
+    assertTrue(new TupleComparator(td, 0, true).compare(a, b) < 0);
+    assertTrue(new TupleComparator(td, 0, false).compare(a, b) > 0);
+    assertEquals(0, new TupleComparator(td, 0, true).compare(a, a));
+  }
+
+  /**
+   * Unit test for LogicalPlan.physicalPlan() planning a multi-field ORDER BY
+   */
+  @Test public void orderByPlan() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 500, 10, null,
+        new ArrayList<ArrayList<Integer>>(), "c");
+    Database.getCatalog().addTable(f, "TO");
+    TableStats.setTableStats("TO", new TableStats(f.getId(), 19));
+
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid,
+        "SELECT t.c1, t.c0 FROM TO t ORDER BY t.c0, t.c1 DESC;");
+    DbIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    // the projected fields are c1, c0
+    TupleComparator order = new TupleComparator(plan.getTupleDesc(), new int[] { 1, 0 },
+        new boolean[] { true, false });
+    plan.open();
+    Tuple prev = null;
+    while (plan.hasNext()) {
+      Tuple t = plan.next();
+      if (prev != null)
+        assertTrue(order.compare(prev, t) <= 0);
+      prev = t;
+    }
+    plan.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(OrderByTest.class);
+  }
+}
@@ -0,0 +1,185 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParallelAggregateTest extends SimpleDbTestBase {
+
+  HeapFile f;
+  TransactionId tid;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createHeapFile() throws Exception {
+    // several pages, so every worker gets some
+    f = SystemTestUtil.createRandomHeapFile(2, 5000, 50, null,
+        new ArrayList<ArrayList<Integer>>(), "c");
+    Database.getCatalog().addTable(f, "TP");
+    tid = new TransactionId();
+  }
+
+  @After public void tearDown() throws Exception {
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Checks that a ParallelAggregate with the specified number of workers
+   * returns the same tuples as an Aggregate
+   */
+  private void checkSameAsAggregate(int gfield, Aggregator.Op aop, int workers)
+      throws Exception {
+    Aggregate expected = new Aggregate(new SeqScan(tid, f.getId(), "t"), 1,
+        gfield, aop);
+    ParallelAggregate op = new ParallelAggregate(new SeqScan(tid, f.getId(), "t"),
+        1, gfield, aop, workers);
+    assertEquals(expected.getTupleDesc(), op.getTupleDesc());
+    expected.open();
+    op.open();
+    int count = 0;
+    while (op.hasNext()) {
+      op.next();
+      count++;
+    }
+    int expectedCount = 0;
+    while (expected.hasNext()) {
+      expected.next();
+      expectedCount++;
+    }
+    assertEquals(expectedCount, count);
+    op.rewind();
+    expected.rewind();
+    TestUtil.matchAllTuples(expected, op);
+    op.close();
+    expected.close();
+  }
+
+  /**
+   * Unit test for ParallelAggregate.getNext() with every aggregate operator,
+   * grouped and not
+   */
+  @Test public void sameAsAggregate() throws Exception {
+    assertTrue(f.numPages() >= 4);
+    for (Aggregator.Op aop : new Aggregator.Op[] { Aggregator.Op.MIN,
+        Aggregator.Op.MAX, Aggregator.Op.SUM, Aggregator.Op.AVG,
+        Aggregator.Op.COUNT }) {
+      checkSameAsAggregate(0, aop, 4);
+      checkSameAsAggregate(Aggregator.NO_GROUPING, aop, 4);
+    }
+  }
+
+  /**
+   * Unit test for ParallelAggregate.getNext() with one worker, and with
+   * more workers than pages
+   */
+  @Test public void workers() throws Exception {
+    checkSameAsAggregate(0, Aggregator.Op.AVG, 1);
+    checkSameAsAggregate(0, Aggregator.Op.SUM, f.numPages() + 3);
+  }
+
+  /**
+   * Unit test for ParallelAggregate.getNext() applying the predicates
+   * pushed down into the scan
+   */
+  @Test public void predicates() throws Exception {
+    SeqScan scan = new SeqScan(tid, f.getId(), "t");
+    scan.addPredicate(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10)));
+    ParallelAggregate op = new ParallelAggregate(scan, 1, 0, Aggregator.Op.COUNT, 3);
+    op.open();
+    int groups = 0;
+    while (op.hasNext()) {
+      assertTrue(((IntField) op.next().getField(0)).getValue() < 10);
+      groups++;
+    }
+    assertTrue(groups > 0);
+    op.close();
+  }
+
+  /**
+   * Unit test for ParallelAggregate.getNext() with sums whose partial
+   * results don't fit in an int although the totals do
+   */
+  @Test public void partialOverflow() throws Exception {
+    // the first half of the pages only has large values, the second half
+    // only large negative ones
+    ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+    for (int i = 0; i < 6000; i++) {
+      ArrayList<Integer> tuple = new ArrayList<Integer>();
+      tuple.add(i % 2);
+      tuple.add(i < 3000 ? 2000000 : -2000000);
+      tuples.add(tuple);
+    }
+    File file = File.createTempFile("overflow", ".dat");
+    file.deleteOnExit();
+    FreeSpaceMap.mapFile(file).deleteOnExit();
+    HeapFileEncoder.convert(tuples, file, BufferPool.getPageSize(), 2);
+    HeapFile hf = Utility.openHeapFile(2, file);
+    for (Aggregator.Op aop : new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.AVG }) {
+      OrderBy op = new OrderBy(0, true, new ParallelAggregate(
+          new SeqScan(tid, hf.getId(), "t"), 1, 0, aop, 2));
+      op.open();
+      TestUtil.compareDbIterators(TestUtil.createTupleList(2, new int[] { 0, 0, 1, 0 }),
+          op);
+      op.close();
+    }
+  }
+
+  /**
+   * Unit test for LogicalPlan.parallelWorkers()
+   */
+  @Test public void parallelWorkers() throws Exception {
+    SeqScan scan = new SeqScan(tid, f.getId(), "t");
+    int pagesPerWorker = ParallelAggregate.MIN_PAGES_PER_WORKER;
+    assertEquals(Math.max(1, Math.min(ParallelAggregate.DEFAULT_WORKERS,
+        f.numPages() / pagesPerWorker)), LogicalPlan.parallelWorkers(scan,
+        ParallelAggregate.DEFAULT_WORKERS));
+    assertEquals(1, LogicalPlan.parallelWorkers(new Filter(
+        new Predicate(0, Predicate.Op.EQUALS, new IntField(1)), scan),
+        ParallelAggregate.DEFAULT_WORKERS));
+  }
+
+  /**
+   * Unit test for LogicalPlan.physicalPlan() choosing a ParallelAggregate
+   * only when the plan may run on several threads
+   */
+  @Test public void parallelPlan() throws Exception {
+    // enough pages for two workers
+    HeapFile large = SystemTestUtil.createRandomHeapFile(2, 25000, 50, null,
+        new ArrayList<ArrayList<Integer>>(), "c");
+    assertTrue(large.numPages() >= 2 * ParallelAggregate.MIN_PAGES_PER_WORKER);
+    Database.getCatalog().addTable(large, "TPL");
+    TableStats.setTableStats("TPL", new TableStats(large.getId(), 19));
+    String query = "SELECT SUM(t.c1) FROM TPL t;";
+
+    DbIterator serial = new Parser().generateLogicalPlan(tid, query)
+        .physicalPlan(tid, TableStats.getStatsMap(), false);
+    assertTrue(((Project) serial).getChildren()[0] instanceof Aggregate);
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid, query);
+    lp.setParallelism(4);
+    DbIterator parallel = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    DbIterator agg = ((Project) parallel).getChildren()[0];
+    assertTrue(agg instanceof ParallelAggregate);
+    assertTrue(((ParallelAggregate) agg).getWorkers() <= 4);
+    serial.open();
+    parallel.open();
+    TestUtil.compareDbIterators(serial, parallel);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelAggregateTest.class);
+  }
+}
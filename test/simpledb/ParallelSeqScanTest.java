@@ -0,0 +1,164 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParallelSeqScanTest extends SimpleDbTestBase {
+
+  HeapFile f;
+  TransactionId tid;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createHeapFile() throws Exception {
+    // several pages, so every worker gets some
+    f = SystemTestUtil.createRandomHeapFile(2, 5000, 50, null,
+        new ArrayList<ArrayList<Integer>>(), "c");
+    Database.getCatalog().addTable(f, "TPS");
+    tid = new TransactionId();
+  }
+
+  @After public void tearDown() throws Exception {
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Unit test for ParallelSeqScan.split(): the ranges cover every page once
+   */
+  @Test public void split() throws Exception {
+    assertTrue(f.numPages() >= 4);
+    SeqScan[] ranges = ParallelSeqScan.split(new SeqScan(tid, f.getId(), "t"), 4);
+    assertEquals(4, ranges.length);
+    int tuples = 0;
+    for (SeqScan range : ranges) {
+      assertTrue(range.hasPageRange());
+      range.open();
+      tuples += TestUtil.countTuples(range);
+      range.close();
+    }
+    SeqScan all = new SeqScan(tid, f.getId(), "t");
+    all.open();
+    assertEquals(TestUtil.countTuples(all), tuples);
+
+    // at most one range for each page
+    assertEquals(f.numPages(), ParallelSeqScan.split(new SeqScan(tid, f.getId(), "t"),
+        f.numPages() + 3).length);
+  }
+
+  /**
+   * Unit test for ParallelSeqScan.getNext(): the same tuples as a SeqScan
+   */
+  @Test public void getNext() throws Exception {
+    ParallelSeqScan op = new ParallelSeqScan(new SeqScan(tid, f.getId(), "t"), 3);
+    assertEquals(new SeqScan(tid, f.getId(), "t").getTupleDesc(), op.getTupleDesc());
+    assertEquals(TestUtil.tupleCounts(new SeqScan(tid, f.getId(), "t")),
+        TestUtil.tupleCounts(op));
+  }
+
+  /**
+   * Unit test for ParallelSeqScan.getNext() applying the predicates pushed
+   * down into the scan
+   */
+  @Test public void predicates() throws Exception {
+    SeqScan scan = new SeqScan(tid, f.getId(), "t");
+    scan.addPredicate(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10)));
+    ParallelSeqScan op = new ParallelSeqScan(scan, 4);
+    HashMap<String, Integer> counts = TestUtil.tupleCounts(op);
+    assertTrue(counts.size() > 0);
+    assertEquals(TestUtil.tupleCounts(scan), counts);
+  }
+
+  /**
+   * Unit test for ParallelSeqScan.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    ParallelSeqScan op = new ParallelSeqScan(new SeqScan(tid, f.getId(), "t"), 2);
+    op.open();
+    int count = 0;
+    while (op.hasNext()) {
+      op.next();
+      count++;
+    }
+    op.rewind();
+    while (op.hasNext()) {
+      op.next();
+      count--;
+    }
+    assertEquals(0, count);
+    op.close();
+  }
+
+  /**
+   * Unit test for BTreeFile.iterator() over a range of pages: the ranges
+   * return every tuple once; and for ParallelSeqScan rejecting B+ trees
+   */
+  @Test public void bTreeRange() throws Exception {
+    BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 2000, null, null, 0);
+    Database.getCatalog().addTable(bf, "TPSB");
+    int numPages = bf.numPages();
+    int tuples = 0;
+    for (int start = 0; start < numPages; start += 3) {
+      DbFileIterator it = bf.iterator(tid, start, Math.min(numPages, start + 3));
+      it.open();
+      while (it.hasNext()) {
+        it.next();
+        tuples++;
+      }
+      it.close();
+    }
+    assertEquals(2000, tuples);
+
+    try {
+      bf.iterator(tid, 2, 1);
+      fail("expected exception");
+    } catch (IllegalArgumentException e) {
+    }
+    // the ranges of a B+ tree scan aren't cheaper than a full scan
+    try {
+      new ParallelSeqScan(new SeqScan(tid, bf.getId(), "b"), 2);
+      fail("expected exception");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * Unit test for LogicalPlan.physicalPlan() scanning a large table on
+   * several threads
+   */
+  @Test public void parallelPlan() throws Exception {
+    // enough pages for two workers
+    HeapFile large = SystemTestUtil.createRandomHeapFile(2, 25000, 50, null,
+        new ArrayList<ArrayList<Integer>>(), "c");
+    assertTrue(large.numPages() >= 2 * ParallelAggregate.MIN_PAGES_PER_WORKER);
+    Database.getCatalog().addTable(large, "TPSL");
+    TableStats.setTableStats("TPSL", new TableStats(large.getId(), 19));
+    String query = "SELECT t.c0, t.c1 FROM TPSL t WHERE t.c1 < 25;";
+    DbIterator serial = new Parser().generateLogicalPlan(tid, query)
+        .physicalPlan(tid, TableStats.getStatsMap(), false);
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid, query);
+    lp.setParallelism(4);
+    DbIterator parallel = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    assertTrue(((Project) parallel).getChildren()[0] instanceof ParallelSeqScan);
+    assertEquals(TestUtil.tupleCounts(serial), TestUtil.tupleCounts(parallel));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelSeqScanTest.class);
+  }
+}
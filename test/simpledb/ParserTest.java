@@ -0,0 +1,91 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ParserTest extends SimpleDbTestBase {
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTables() throws Exception {
+    createTable("PLS", new int[] { 1, 2, 3, 4, 5 });
+    createTable("PLD", new int[0]);
+  }
+
+  /** Creates a table of two int columns c0 and c1 with the c0 values */
+  private void createTable(String name, int[] values) throws Exception {
+    ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+    for (int v : values) {
+      ArrayList<Integer> tuple = new ArrayList<Integer>();
+      tuple.add(v);
+      tuple.add(v);
+      tuples.add(tuple);
+    }
+    File file = File.createTempFile("parser", ".dat");
+    file.deleteOnExit();
+    FreeSpaceMap.mapFile(file).deleteOnExit();
+    HeapFileEncoder.convert(tuples, file, BufferPool.getPageSize(), 2);
+    HeapFile f = Utility.openHeapFile(2, "c", file);
+    Database.getCatalog().addTable(f, name);
+    TableStats.setTableStats(name, new TableStats(f.getId(), 19));
+  }
+
+  /** @return the number of tuples in the specified table */
+  private int numTuples(String table) throws Exception {
+    TransactionId tid = new TransactionId();
+    SeqScan scan = new SeqScan(tid, Database.getCatalog().getTableId(table));
+    scan.open();
+    int count = TestUtil.countTuples(scan);
+    scan.close();
+    Database.getBufferPool().transactionComplete(tid);
+    return count;
+  }
+
+  /**
+   * Unit test for Parser.processNextStatement() rejecting a DELETE with a
+   * LIMIT instead of deleting every matching tuple
+   */
+  @Test public void deleteLimit() throws Exception {
+    new Parser().processNextStatement("DELETE FROM PLS WHERE PLS.c0 > 1 LIMIT 1;");
+    assertEquals(5, numTuples("PLS"));
+    new Parser().processNextStatement("DELETE FROM PLS WHERE PLS.c0 > 1;");
+    assertEquals(1, numTuples("PLS"));
+  }
+
+  /**
+   * Unit test for Parser.processNextStatement() applying the LIMIT of an
+   * INSERT to its subquery
+   */
+  @Test public void insertLimit() throws Exception {
+    new Parser().processNextStatement("INSERT INTO PLD SELECT * FROM PLS t LIMIT 2;");
+    assertEquals(2, numTuples("PLD"));
+  }
+
+  /**
+   * Unit test for Parser.processNextStatement() reading a stream whose
+   * first statement has a LIMIT
+   */
+  @Test public void streamLimit() throws Exception {
+    new Parser().processNextStatement(new ByteArrayInputStream((
+        "INSERT INTO PLD SELECT * FROM PLS t WHERE t.c0 > 1 LIMIT 3;\n"
+        + "SELECT * FROM PLS t;\n").getBytes("UTF-8")));
+    assertEquals(3, numTuples("PLD"));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParserTest.class);
+  }
+}
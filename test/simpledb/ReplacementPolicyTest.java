@@ -0,0 +1,121 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ReplacementPolicyTest extends SimpleDbTestBase {
+
+    /**
+     * Mimics the BufferPool: admits pid into a cache of the given capacity,
+     * evicting a victim chosen by the policy if the cache is full.
+     */
+    private static void access(ReplacementPolicy policy, Set<PageId> cache,
+            int capacity, PageId pid) {
+        if (!cache.contains(pid)) {
+            if (cache.size() >= capacity)
+                assertTrue(cache.remove(policy.evictionVictim()));
+            cache.add(pid);
+        }
+        policy.pageAccessed(pid);
+    }
+
+    /**
+     * Runs a workload where two hot pages are reused and then a long
+     * sequential scan runs; returns the pages left in the cache.
+     */
+    private static Set<PageId> hotPagesThenScan(ReplacementPolicy policy, int capacity) {
+        Set<PageId> cache = new HashSet<PageId>();
+        HeapPageId hot0 = new HeapPageId(-2, 0);
+        HeapPageId hot1 = new HeapPageId(-2, 1);
+        access(policy, cache, capacity, hot0);
+        access(policy, cache, capacity, hot1);
+        for (int i = 0; i < capacity; i++)
+            access(policy, cache, capacity, new HeapPageId(-1, i));
+        access(policy, cache, capacity, hot0);
+        access(policy, cache, capacity, hot1);
+        for (int i = capacity; i < 100; i++)
+            access(policy, cache, capacity, new HeapPageId(-1, i));
+        return cache;
+    }
+
+    /**
+     * Unit test for LRUReplacementPolicy.evictionVictim()
+     */
+    @Test public void lruOrder() {
+        ReplacementPolicy lru = new LRUReplacementPolicy(3);
+        HeapPageId p0 = new HeapPageId(-1, 0);
+        HeapPageId p1 = new HeapPageId(-1, 1);
+        HeapPageId p2 = new HeapPageId(-1, 2);
+        lru.pageAccessed(p0);
+        lru.pageAccessed(p1);
+        lru.pageAccessed(p2);
+        // a hit moves p0 to the most recently used end
+        lru.pageAccessed(p0);
+        assertEquals(p1, lru.evictionVictim());
+        assertEquals(p2, lru.evictionVictim());
+        assertEquals(p0, lru.evictionVictim());
+        assertNull(lru.evictionVictim());
+    }
+
+    /**
+     * Unit test for LRUReplacementPolicy.pageRemoved()
+     */
+    @Test public void lruRemove() {
+        ReplacementPolicy lru = new LRUReplacementPolicy(2);
+        HeapPageId p0 = new HeapPageId(-1, 0);
+        HeapPageId p1 = new HeapPageId(-1, 1);
+        lru.pageAccessed(p0);
+        lru.pageAccessed(p1);
+        lru.pageRemoved(p0);
+        lru.pageRemoved(new HeapPageId(-1, 7));
+        assertEquals(p1, lru.evictionVictim());
+        assertNull(lru.evictionVictim());
+    }
+
+    /**
+     * Unit test for TwoQueueReplacementPolicy: a sequential scan must not
+     * flush pages that were referenced more than once.
+     */
+    @Test public void twoQueueScanResistance() {
+        Set<PageId> cache = hotPagesThenScan(new TwoQueueReplacementPolicy(8), 8);
+        assertTrue(cache.contains(new HeapPageId(-2, 0)));
+        assertTrue(cache.contains(new HeapPageId(-2, 1)));
+
+        // plain LRU loses both hot pages to the same workload
+        cache = hotPagesThenScan(new LRUReplacementPolicy(8), 8);
+        assertFalse(cache.contains(new HeapPageId(-2, 0)));
+        assertFalse(cache.contains(new HeapPageId(-2, 1)));
+    }
+
+    /**
+     * Unit test for TwoQueueReplacementPolicy.pageRemoved()
+     */
+    @Test public void twoQueueRemove() {
+        ReplacementPolicy twoQ = new TwoQueueReplacementPolicy(4);
+        HeapPageId p0 = new HeapPageId(-1, 0);
+        HeapPageId p1 = new HeapPageId(-1, 1);
+        twoQ.pageAccessed(p0);
+        twoQ.pageAccessed(p1);
+        twoQ.pageRemoved(p0);
+        assertEquals(p1, twoQ.evictionVictim());
+        assertNull(twoQ.evictionVictim());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
@@ -0,0 +1,178 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int width2 = 3;
+  DbIterator scan1;
+  DbIterator scan2;
+  DbIterator eqJoin;
+  DbIterator gtJoin;
+  DbIterator ltJoin;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    3, 4,
+                    5, 6,
+                    7, 8 });
+    this.scan2 = TestUtil.createTupleList(width2,
+        new int[] { 1, 2, 3,
+                    2, 3, 4,
+                    3, 4, 5,
+                    4, 5, 6,
+                    5, 6, 7 });
+    this.eqJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 1, 2, 1, 2, 3,
+                    3, 4, 3, 4, 5,
+                    5, 6, 5, 6, 7 });
+    this.gtJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] {
+                    3, 4, 1, 2, 3, // 1, 2 < 3
+                    3, 4, 2, 3, 4,
+                    5, 6, 1, 2, 3, // 1, 2, 3, 4 < 5
+                    5, 6, 2, 3, 4,
+                    5, 6, 3, 4, 5,
+                    5, 6, 4, 5, 6,
+                    7, 8, 1, 2, 3, // 1, 2, 3, 4, 5 < 7
+                    7, 8, 2, 3, 4,
+                    7, 8, 3, 4, 5,
+                    7, 8, 4, 5, 6,
+                    7, 8, 5, 6, 7 });
+    this.ltJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] {
+                    1, 2, 2, 3, 4, // 1 < 2
+                    1, 2, 3, 4, 5, // 1 < 3
+                    1, 2, 4, 5, 6, // 1, 3 < 4
+                    3, 4, 4, 5, 6,
+                    1, 2, 5, 6, 7, // 1, 3 < 5
+                    3, 4, 5, 6, 7 });
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getTupleDesc()
+   */
+  @Test public void getTupleDesc() {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    TupleDesc expected = Utility.getTupleDesc(width1 + width2);
+    TupleDesc actual = op.getTupleDesc();
+    assertEquals(expected, actual);
+  }
+
+  /**
+   * Unit test for SortMergeJoin.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    while (op.hasNext()) {
+      assertNotNull(op.next());
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    op.rewind();
+
+    eqJoin.open();
+    Tuple expected = eqJoin.next();
+    Tuple actual = op.next();
+    assertTrue(TestUtil.compareTuples(expected, actual));
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() using an = predicate
+   */
+  @Test public void eqJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    eqJoin.open();
+    TestUtil.compareDbIterators(eqJoin, op);
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() using an = predicate on join
+   * field values that occur more than once in both relations
+   */
+  @Test public void eqJoinDuplicates() throws Exception {
+    DbIterator outer = TestUtil.createTupleList(1, new int[] { 1, 2, 2, 3, 5 });
+    DbIterator inner = TestUtil.createTupleList(1, new int[] { 0, 2, 2, 2, 3, 4 });
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, outer, inner);
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(2,
+        new int[] { 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 3 });
+    TestUtil.compareDbIterators(expected, op);
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() using a &gt; predicate
+   */
+  @Test public void gtJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    gtJoin.open();
+    TestUtil.compareDbIterators(gtJoin, op);
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() using a &lt; predicate
+   */
+  @Test public void ltJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.LESS_THAN, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    ltJoin.open();
+    TestUtil.compareDbIterators(ltJoin, op);
+  }
+
+  /**
+   * Unit test for SortMergeJoin.isSortedOn()
+   */
+  @Test public void isSortedOn() {
+    SortMergeJoin eq = new SortMergeJoin(
+        new JoinPredicate(0, Predicate.Op.EQUALS, 0), scan1, scan2);
+    assertTrue(eq.isSortedOn(0));
+    assertTrue(eq.isSortedOn(width1));
+    assertFalse(eq.isSortedOn(1));
+    SortMergeJoin gt = new SortMergeJoin(
+        new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0), scan1, scan2);
+    assertTrue(gt.isSortedOn(0));
+    assertFalse(gt.isSortedOn(width1));
+    SortMergeJoin lt = new SortMergeJoin(
+        new JoinPredicate(0, Predicate.Op.LESS_THAN, 0), scan1, scan2);
+    assertFalse(lt.isSortedOn(0));
+    assertTrue(lt.isSortedOn(width1));
+  }
+
+  /**
+   * Unit test for the SortMergeJoin constructor with a predicate that
+   * can't be merge joined
+   */
+  @Test(expected = IllegalArgumentException.class) public void notEquals() {
+    new SortMergeJoin(new JoinPredicate(0, Predicate.Op.NOT_EQUALS, 0),
+        scan1, scan2);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SortMergeJoinTest.class);
+  }
+}
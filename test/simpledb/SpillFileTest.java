@@ -0,0 +1,71 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SpillFileTest extends SimpleDbTestBase {
+
+    /**
+     * Unit test for SpillFile.add() and iterator()
+     */
+    @Test public void addAndRead() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        TupleIterator expected = TestUtil.createTupleList(2,
+                new Object[] { 1, "one", 2, "two", 3, "three" });
+        SpillFile spill = new SpillFile(td);
+        while (expected.hasNext())
+            spill.add(expected.next());
+        assertEquals(3, spill.numTuples());
+
+        DbIterator it = spill.iterator();
+        it.open();
+        expected.rewind();
+        TestUtil.compareDbIterators(expected, it);
+
+        // tuples added later show up after a rewind
+        spill.add(tuple(td, 4, "four"));
+        assertFalse(it.hasNext());
+        it.rewind();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        assertEquals(4, count);
+        it.close();
+        spill.close();
+    }
+
+    private static Tuple tuple(TupleDesc td, int i, String s) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    /**
+     * Unit test for SpillFile.iterator() on an empty file
+     */
+    @Test public void empty() throws Exception {
+        SpillFile spill = new SpillFile(Utility.getTupleDesc(2));
+        DbIterator it = spill.iterator();
+        it.open();
+        assertFalse(it.hasNext());
+        assertEquals(0, spill.numTuples());
+        it.close();
+        spill.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SpillFileTest.class);
+    }
+}
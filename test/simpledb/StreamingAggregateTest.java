@@ -0,0 +1,168 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class StreamingAggregateTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  DbIterator scan1;
+  DbIterator scan2;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    1, 4,
+                    1, 6,
+                    3, 2,
+                    3, 4,
+                    3, 6,
+                    5, 7 });
+    this.scan2 = TestUtil.createTupleList(width1,
+        new Object[] { "a", 2,
+                    "a", 4,
+                    "b", 2,
+                    "c", 7 });
+  }
+
+  /**
+   * Unit test for StreamingAggregate.getTupleDesc()
+   */
+  @Test public void getTupleDesc() {
+    StreamingAggregate op = new StreamingAggregate(scan1, 1, 0, Aggregator.Op.MIN);
+    assertEquals(new Aggregate(scan1, 1, 0, Aggregator.Op.MIN).getTupleDesc(),
+        op.getTupleDesc());
+  }
+
+  /**
+   * Unit test for StreamingAggregate.getNext() using sum, avg and count
+   * aggregates, in the order of the groups
+   */
+  @Test public void getNext() throws Exception {
+    StreamingAggregate op = new StreamingAggregate(scan1, 1, 0, Aggregator.Op.SUM);
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 1, 12, 3, 12, 5, 7 }), op);
+    assertTrue(TestUtil.checkExhausted(op));
+    op.close();
+
+    op = new StreamingAggregate(scan1, 1, 0, Aggregator.Op.AVG);
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 1, 4, 3, 4, 5, 7 }), op);
+    op.close();
+
+    op = new StreamingAggregate(scan2, 0, 0, Aggregator.Op.COUNT);
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new Object[] { "a", 2, "b", 1, "c", 1 }), op);
+    op.close();
+  }
+
+  /**
+   * Unit test for StreamingAggregate.getNext() without grouping, and over
+   * no tuples
+   */
+  @Test public void noGrouping() throws Exception {
+    StreamingAggregate op = new StreamingAggregate(scan1, 1,
+        Aggregator.NO_GROUPING, Aggregator.Op.MAX);
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(1, new int[] { 7 }), op);
+    assertTrue(TestUtil.checkExhausted(op));
+
+    op = new StreamingAggregate(TestUtil.createTupleList(width1, new int[0]),
+        1, 0, Aggregator.Op.SUM);
+    op.open();
+    assertFalse(op.hasNext());
+  }
+
+  /**
+   * Unit test for StreamingAggregate.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    StreamingAggregate op = new StreamingAggregate(scan1, 1, 0, Aggregator.Op.MIN);
+    op.open();
+    while (op.hasNext())
+      op.next();
+    op.rewind();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 1, 2, 3, 2, 5, 7 }), op);
+  }
+
+  /**
+   * Unit test for LogicalPlan.physicalPlan() choosing an Aggregate for a
+   * GROUP BY over unsorted tuples, and for StreamingAggregate over sorted
+   * tuples returning the groups of Aggregate in order
+   */
+  @Test public void groupByPlan() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 500, 20, null,
+        new ArrayList<ArrayList<Integer>>(), "c");
+    Database.getCatalog().addTable(f, "TS");
+    TableStats.setTableStats("TS", new TableStats(f.getId(), 19));
+
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid,
+        "SELECT t.c0, SUM(t.c1) FROM TS t GROUP BY t.c0;");
+    DbIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    assertTrue(((Project) plan).getChildren()[0] instanceof Aggregate);
+    Database.getBufferPool().transactionComplete(tid);
+
+    // a sorted input is aggregated as it streams by
+    tid = new TransactionId();
+    DbIterator scan = new SeqScan(tid, f.getId(), "t");
+    DbIterator sorted = new OrderBy(0, true, scan);
+    assertTrue(JoinOptimizer.isSortedOn(sorted, 0));
+    StreamingAggregate streaming = new StreamingAggregate(sorted, 1, 0, Aggregator.Op.SUM);
+    assertTrue(JoinOptimizer.isSortedOn(streaming, 0));
+    assertFalse(JoinOptimizer.isSortedOn(new StreamingAggregate(scan, 0, 1,
+        Aggregator.Op.SUM), 0));
+    // so is a B+ tree scan on its key
+    BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 10, null, null, 1);
+    Database.getCatalog().addTable(bf, "TSB");
+    assertTrue(JoinOptimizer.isSortedOn(new SeqScan(tid, bf.getId()), 1));
+    Aggregate hashed = new Aggregate(new SeqScan(tid, f.getId(), "t"), 1, 0,
+        Aggregator.Op.SUM);
+    hashed.open();
+    streaming.open();
+    int groups = 0;
+    int prev = Integer.MIN_VALUE;
+    while (streaming.hasNext()) {
+      Tuple t = streaming.next();
+      int g = ((IntField) t.getField(0)).getValue();
+      assertTrue(g > prev);
+      prev = g;
+      groups++;
+    }
+    int expectedGroups = 0;
+    while (hashed.hasNext()) {
+      hashed.next();
+      expectedGroups++;
+    }
+    assertEquals(expectedGroups, groups);
+    streaming.rewind();
+    TestUtil.matchAllTuples(streaming, hashed);
+    streaming.close();
+    hashed.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(StreamingAggregateTest.class);
+  }
+}
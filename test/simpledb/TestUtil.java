@@ -149,6 +149,38 @@ public class TestUtil {
         }
     }
 
+    /**
+     * @return the number of tuples the open DbIterator returns before it is
+     *   exhausted
+     */
+    public static int countTuples(DbIterator it)
+            throws DbException, TransactionAbortedException {
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Opens the DbIterator, reads it to the end and closes it.
+     * @return the number of times every tuple is returned, by the string of
+     *   its field values
+     */
+    public static HashMap<String, Integer> tupleCounts(DbIterator it)
+            throws DbException, TransactionAbortedException {
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        it.open();
+        while (it.hasNext()) {
+            String t = it.next().toString();
+            Integer c = counts.get(t);
+            counts.put(t, c == null ? 1 : c + 1);
+        }
+        it.close();
+        return counts;
+    }
+
     /**
      * Verifies that the DbIterator has been exhausted of all elements.
      */
@@ -219,6 +251,11 @@ public class TestUtil {
             throw new RuntimeException("not implemented");
         }
 
+        public ArrayList<Page> insertTuples(TransactionId tid, List<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+            throw new RuntimeException("not implemented");
+        }
+
         public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
             throws DbException, TransactionAbortedException {
             throw new RuntimeException("not implemented");
@@ -236,6 +273,13 @@ public class TestUtil {
             throw new RuntimeException("not implemented");
         }
 
+        public DbFileIterator iterator(TransactionId tid, int startPage, int endPage) {
+            throw new RuntimeException("not implemented");
+        }
+
+        public void close() {
+        }
+
 		public TupleDesc getTupleDesc() {			
 			return td;
 		}
@@ -380,6 +424,7 @@ public class TestUtil {
                 throw new RuntimeException(e);
             }
             emptyFile.deleteOnExit();
+            FreeSpaceMap.mapFile(emptyFile).deleteOnExit();
         }
 
         protected void setUp() throws Exception {
@@ -0,0 +1,127 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class TopNTest extends SimpleDbTestBase {
+
+  int width = 2;
+  DbIterator scan;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan = TestUtil.createTupleList(width,
+        new int[] { 5, 1,
+                    3, 2,
+                    8, 3,
+                    1, 4,
+                    8, 5,
+                    2, 6 });
+  }
+
+  /**
+   * Unit test for TopN.getNext() in ascending order
+   */
+  @Test public void ascending() throws Exception {
+    TopN op = new TopN(0, true, 3, scan);
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(width,
+        new int[] { 1, 4,
+                    2, 6,
+                    3, 2 });
+    TestUtil.compareDbIterators(expected, op);
+    assertTrue(TestUtil.checkExhausted(op));
+  }
+
+  /**
+   * Unit test for TopN.getNext() in descending order, with ties
+   */
+  @Test public void descending() throws Exception {
+    TopN op = new TopN(0, false, 3, scan);
+    op.open();
+    assertEquals(new IntField(8), op.next().getField(0));
+    assertEquals(new IntField(8), op.next().getField(0));
+    assertEquals(new IntField(5), op.next().getField(0));
+    assertTrue(TestUtil.checkExhausted(op));
+  }
+
+  /**
+   * Unit test for TopN.getNext() with a limit of 0, and one above the
+   * number of child tuples
+   */
+  @Test public void limits() throws Exception {
+    TopN op = new TopN(1, true, 0, scan);
+    op.open();
+    assertFalse(op.hasNext());
+    op.close();
+
+    op = new TopN(1, true, 10, scan);
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(width,
+        new int[] { 5, 1, 3, 2, 8, 3, 1, 4, 8, 5, 2, 6 });
+    TestUtil.compareDbIterators(expected, op);
+  }
+
+  /**
+   * Unit test for TopN.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    TopN op = new TopN(0, true, 2, scan);
+    op.open();
+    while (op.hasNext())
+      op.next();
+    op.rewind();
+    assertEquals(new IntField(1), op.next().getField(0));
+  }
+
+  /**
+   * Unit test for LogicalPlan.physicalPlan() planning ORDER BY ... LIMIT
+   * with a TopN below the projection
+   */
+  @Test public void orderByLimitPlan() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 500, 1000, null,
+        new ArrayList<ArrayList<Integer>>(), "c");
+    Database.getCatalog().addTable(f, "TL");
+    TableStats.setTableStats("TL", new TableStats(f.getId(), 19));
+
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid,
+        "SELECT t.c0 FROM TL t ORDER BY t.c0 DESC LIMIT 5;");
+    assertEquals(5, lp.getLimit());
+    DbIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    assertTrue(plan instanceof Project);
+    assertTrue(((Project) plan).getChildren()[0] instanceof TopN);
+
+    plan.open();
+    int count = 0;
+    int prev = Integer.MAX_VALUE;
+    while (plan.hasNext()) {
+      int v = ((IntField) plan.next().getField(0)).getValue();
+      assertTrue(v <= prev);
+      prev = v;
+      count++;
+    }
+    assertEquals(5, count);
+    plan.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TopNTest.class);
+  }
+}
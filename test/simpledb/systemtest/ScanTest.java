@@ -104,6 +104,24 @@ public class ScanTest extends SimpleDbTestBase {
         assertEquals(0, table.readCount);
     }
 
+    /** Test a scan with predicates pushed down into it. */
+    @Test public void testPushedPredicates() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 3000, 100, null, tuples);
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(0) >= 20 && t.get(1) != 50)
+                expected.add(t);
+        }
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, f.getId(), "table");
+        scan.addPredicate(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(20)));
+        scan.addPredicate(new Predicate(1, Predicate.Op.NOT_EQUALS, new IntField(50)));
+        SystemTestUtil.matchTuples(scan, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(ScanTest.class);